@@ -0,0 +1,31 @@
+package dev.ade.project.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps the rows of the POJO class in the process-wide entity cache, by primary key.
+ * Only put it on classes whose table is written through AdeOrm, other writes are not seen.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+    /**
+     * @return maximum number of cached rows, the least recently used are evicted first
+     */
+    public int maxEntries() default 10000;
+
+    /**
+     * @return seconds a row stays cached after it was read, 0 for no expiry
+     */
+    public long ttlSeconds() default 300;
+
+    /**
+     * @return off-heap bytes holding the cached rows in a compact binary form, 0 keeps
+     * them on heap. Off heap the cache is bounded by this size instead of maxEntries,
+     * the oldest rows are evicted first
+     */
+    public long offHeapBytes() default 0;
+}
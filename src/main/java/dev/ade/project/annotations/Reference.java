@@ -0,0 +1,16 @@
+package dev.ade.project.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field holding the entity referenced by a @ForeignKey column of the same class,
+ * the field type is the referenced POJO class, or Lazy of it to read the target on first use.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Reference {
+    public String columnName() default "";
+}
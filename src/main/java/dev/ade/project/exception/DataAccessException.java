@@ -0,0 +1,16 @@
+package dev.ade.project.exception;
+
+/**
+ * Unchecked wrapper of a database error, thrown where a checked exception
+ * cannot be, such as from an Iterator or a Stream.
+ */
+public class DataAccessException extends RuntimeException {
+
+    public DataAccessException(String message){
+        super(message);
+    }
+
+    public DataAccessException(String message, Exception e){
+        super(message, e);
+    }
+}
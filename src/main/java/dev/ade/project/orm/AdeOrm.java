@@ -1,28 +1,51 @@
 package dev.ade.project.orm;
 
-import dev.ade.project.annotations.ColumnName;
-import dev.ade.project.annotations.PrimaryKey;
-import dev.ade.project.annotations.TableName;
 import dev.ade.project.exception.ArgumentFormatException;
 import dev.ade.project.util.ConnectionUtil;
 import dev.ade.project.util.MapperUtil;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.*;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Repository of one POJO class. An AdeOrm instance holds no connection or transaction
+ * state, one instance per class can be shared by all threads; transactions are bound
+ * to the calling thread through a Session.
+ */
 public class AdeOrm implements Mapper {
     // A POJO class mirror with a table in the db
-    private Class<?> clazz;
-    private Connection conn;
-    private boolean isTransaction;
-    private List<Boolean> completes;
+    private final Class<?> clazz;
+    private final EntityMetadata metadata;
+    private volatile int batchSize = 500;
+    private volatile boolean multiRowInserts;
+    private volatile int fetchSize = 1000;
+    private volatile boolean resultCaching;
+    private volatile boolean requestCoalescing = true;
 
-    public AdeOrm() {}
+    // PostgreSQL accepts at most 32767 bind parameters in one statement
+    private static final int MAX_BIND_PARAMETERS = 32767;
+
+    /**
+     * Unit of JDBC work run on a connection
+     */
+    private interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Reads the result of a select
+     */
+    private interface ResultHandler<T> {
+        T handle(ResultSet rs) throws SQLException;
+    }
+
+    public AdeOrm() {
+        this.clazz = null;
+        this.metadata = null;
+    }
 
     /**
      * Constructor for create an orm instance for one POJO class
@@ -32,6 +55,7 @@ public class AdeOrm implements Mapper {
      */
     public AdeOrm(Class<?> clazz) {
         this.clazz = clazz;
+        this.metadata = EntityMetadata.of(clazz);
     }
 
     /**
@@ -51,142 +75,168 @@ public class AdeOrm implements Mapper {
 
     /**
      * Get connection to the db, control the connection
-     * autoCommit status
+     * autoCommit status. Outside a transaction a connection is borrowed
+     * from the pool and closing it gives it back; inside a transaction the
+     * connection of the Session of the current thread is returned.
      *
      * @return Connection instance
      */
     public Connection getConnection() {
-        conn = ConnectionUtil.getConnection();
-        if (isTransaction) {
-            try {
-                conn.setAutoCommit(false);
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-        }
-        return conn;
+        Session session = Session.current();
+        return session == null ? ConnectionUtil.getConnection() : session.getConnection();
+    }
+
+    /**
+     * Set the number of rows sent to the database in one JDBC batch by addAll
+     *
+     * @param batchSize rows per batch, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Rewrite batched inserts into multi-row "insert ... values (...), (...)" statements,
+     * each holding up to batchSize rows
+     *
+     * @param multiRowInserts true to send several rows per insert statement
+     */
+    public void setMultiRowInserts(boolean multiRowInserts) {
+        this.multiRowInserts = multiRowInserts;
+    }
+
+    public boolean isMultiRowInserts() {
+        return multiRowInserts;
+    }
+
+    /**
+     * Set the number of rows fetched per round trip by stream and iterate
+     *
+     * @param fetchSize rows per fetch, at least 1
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Keep the results of getAll, getAllInOrder and the column and join queries in the
+     * ResultCache, until a write through AdeOrm to one of the tables they read
+     *
+     * @param resultCaching true to read repeated queries from the cache
+     */
+    public void setResultCaching(boolean resultCaching) {
+        this.resultCaching = resultCaching;
+    }
+
+    public boolean isResultCaching() {
+        return resultCaching;
+    }
+
+    /**
+     * Let concurrent identical get, getColumns and getByIds calls outside a transaction
+     * share one database call, see SingleFlight. On by default.
+     *
+     * @param requestCoalescing false to always run each call
+     */
+    public void setRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
     }
 
     /**
-     * Set the transaction status to true
+     * Begin a transaction on the current thread, shared by every AdeOrm used on it
      */
     public void begin() {
-        isTransaction = true;
-        completes = new ArrayList<>();
+        Session.begin();
+    }
+
+    /**
+     * Begin a transaction on the current thread, queuing add, update and delete of entities
+     * until commit when writeBehind is true, see Session.setWriteBehind
+     */
+    public void begin(boolean writeBehind) throws SQLException {
+        Session.begin().setWriteBehind(writeBehind);
     }
 
     /**
-     * Commit the transaction
+     * Commit the transaction of the current thread, sending its queued writes first
      */
     public void commit() throws Exception {
-        if (completes.contains(false)) {
-            throw new Exception();
-        } else {
-            try {
-                conn.commit();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        Session session = Session.current();
+        if (session != null) {
+            session.commit();
         }
     }
 
     /**
-     * Roll back the transaction
+     * Roll back the transaction of the current thread
      */
     public void rollback() {
+        Session session = Session.current();
+        if (session == null) {
+            return;
+        }
         try {
-            conn.rollback();
+            session.rollback();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Close the connection, reset default status
+     * End the transaction of the current thread and give its connection back to the pool
      */
     public void close() {
-        try {
-            if (conn != null) {
-                conn.close();
-            }
-            isTransaction = false;
-        } catch (SQLException e) {
-            e.printStackTrace();
+        Session session = Session.current();
+        if (session != null) {
+            session.close();
         }
     }
 
+    /**
+     * Add a POJO of the orm class as a row of its table. When the int primary key
+     * is 0 the key is left to the database default and the generated key is
+     * written back into the @PrimaryKey field. In a write-behind session the insert is
+     * queued until the session flushes.
+     *
+     * @param pojo POJO to be added
+     * @return true when the row is added
+     */
     public boolean add(Object pojo) throws ArgumentFormatException{
-
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
-        String sql = "insert into " + table.tableName();
-
-        Boolean primaryKeyIsIntCheck = false;
-        int pkVal = -1;
-
-        for(Field field : clazz.getDeclaredFields()){
-            if(field.isAnnotationPresent(PrimaryKey.class)){
-                Class<?> fieldType = field.getType();
-                if(int.class.isAssignableFrom(fieldType)){
-                    primaryKeyIsIntCheck = true;
-                    String pkGetter = "get" + field.getName().substring(0,1).toUpperCase(Locale.ROOT) +
-                            field.getName().substring(1);
-
-                    try {
-                        Method getPk = pojo.getClass().getMethod(pkGetter);
-                        pkVal = (Integer) getPk.invoke(pojo);
-
-                    } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                }
+        boolean generatedKey = hasDefaultKey(pojo);
+        UnitOfWork work = unitOfWork();
+        if (work != null && metadata.getPrimaryKey() != null) {
+            try {
+                work.add(this, metadata, pojo, generatedKey);
+            } catch (SQLException e) {
+                throw new ArgumentFormatException("Arguments format are not correct", e);
             }
+            return true;
         }
-        
-        System.out.println(primaryKeyIsIntCheck);
-        System.out.println(pkVal);
-
-        List<FieldPair> pojoFieldPairs = MapperUtil.parseFields(pojo);
-        Object[] fieldValues;
-        String[] questionArray;
-        String s;
-
-        if (pkVal == 0) { // pkVal has been changed to 0 and is therefore default
-
-            Object[] colNames = pojoFieldPairs.stream().filter(w -> !w.isPrimaryKey()).map(FieldPair::getName).toArray();
-            sql += pojoFieldPairs.stream()
-                    .filter(w -> !w.isPrimaryKey())
-                    .map(FieldPair::getName)
-                    .collect(Collectors.joining(", "," ( "," )"));
-
-            System.out.println(sql);
-
-            fieldValues = pojoFieldPairs.stream().filter(w -> !w.isPrimaryKey()).map(FieldPair::getValue).toArray();
-
-            System.out.println(Arrays.toString(fieldValues));
-            questionArray = new String[pojoFieldPairs.size() -1 ];
-
-        }else{ // pkVal has been changed to non-zero and therefore sql statement needs to involve it
-
-            fieldValues = pojoFieldPairs.stream().map(FieldPair::getValue).toArray();
-            questionArray = new String[pojoFieldPairs.size()];
-
-        }
-
-        sql += " values (";
-
-        Arrays.fill(questionArray, "?");
-        s = Arrays.stream(questionArray).collect(Collectors.joining(", ", "", ");"));
-
-        sql += s;
-        System.out.println(sql);
-        System.out.println(Arrays.toString(fieldValues));
+        List<ColumnMetadata> columns = generatedKey ? metadata.getNonKeyColumns() : metadata.getColumns();
+        String sql = SqlCache.get(metadata.getType(), generatedKey ? "add generated" : "add",
+                columnNames(columns), () -> insertSql(metadata.getTableName(), columnNames(columns), 1));
 
         try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            MapperUtil.setPs(ps, fieldValues);
+            PreparedStatement ps = prepareInsert(conn, sql, generatedKey)){
+            MapperUtil.setPs(ps, columnValues(pojo, columns));
 
             ps.executeUpdate();
-
+            if (generatedKey) {
+                readGeneratedKeys(ps, Collections.singletonList(pojo), 0);
+            }
+            saved(pojo);
         } catch (SQLException throwables) {
             throw new ArgumentFormatException("Arguments format are not correct", throwables);
         }
@@ -220,6 +270,7 @@ public class AdeOrm implements Mapper {
             MapperUtil.setPs(ps, fieldValues);
 
             ps.executeUpdate();
+            evictTable(tableName);
 
         } catch (SQLException throwables) {
             throw new ArgumentFormatException("Arguments format are not correct", throwables);
@@ -267,6 +318,7 @@ public class AdeOrm implements Mapper {
             MapperUtil.setPs(ps, fieldValues);
 
             ps.executeUpdate();
+            evictTable(tableName);
 
         } catch (SQLException throwables) {
             throw new ArgumentFormatException("Arguments format are not correct", throwables);
@@ -275,6 +327,88 @@ public class AdeOrm implements Mapper {
     }
 
 
+    /**
+     * Add many POJOs of the orm class in a single transaction. The insert statement is
+     * built once and rows are sent with JDBC batches of batchSize rows. Rows with an int
+     * primary key of 0 leave the key to the database default.
+     *
+     * @param pojos POJOs to be added
+     * @return true when all rows are added
+     */
+    public boolean addAll(Collection<?> pojos) throws ArgumentFormatException {
+        if (pojos == null) {
+            throw new ArgumentFormatException();
+        }
+        try {
+            inTransaction(conn -> {
+                insertRows(conn, pojos);
+                return true;
+            });
+            pojos.forEach(this::saved);
+            return true;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+    /**
+     * Insert POJOs of the orm class with JDBC batches, rows with an int primary key of 0
+     * get generated keys
+     */
+    private void insertRows(Connection conn, Collection<?> pojos) throws SQLException {
+        List<ColumnMetadata> allColumns = metadata.getColumns();
+        List<ColumnMetadata> nonKeyColumns = metadata.getNonKeyColumns();
+        List<Object> defaultKeyPojos = new ArrayList<>();
+        List<Object[]> defaultKeyRows = new ArrayList<>();
+        List<Object[]> explicitKeyRows = new ArrayList<>();
+        for (Object pojo : pojos) {
+            if (hasDefaultKey(pojo)) {
+                defaultKeyPojos.add(pojo);
+                defaultKeyRows.add(columnValues(pojo, nonKeyColumns));
+            } else {
+                explicitKeyRows.add(columnValues(pojo, allColumns));
+            }
+        }
+        insertBatch(conn, metadata.getTableName(), columnNames(nonKeyColumns), defaultKeyRows, defaultKeyPojos);
+        insertBatch(conn, metadata.getTableName(), columnNames(allColumns), explicitKeyRows, null);
+    }
+
+    /**
+     * Add many rows to a database table in a single transaction. The insert statement is
+     * built once from the field names of the first row and rows are sent with JDBC batches.
+     *
+     * @param tableName table to be added to
+     * @param rows a list of rows, each a list of fields with the same names in the same order
+     * @return true when all rows are added
+     */
+    public boolean addAll(String tableName, List<List<FieldPair>> rows) throws ArgumentFormatException {
+        if (tableName == null || rows == null) {
+            throw new ArgumentFormatException();
+        }
+        if (rows.isEmpty()) {
+            return true;
+        }
+        List<String> names = rows.get(0).stream().map(FieldPair::getName).collect(Collectors.toList());
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (List<FieldPair> row : rows) {
+            if (!names.equals(row.stream().map(FieldPair::getName).collect(Collectors.toList()))) {
+                throw new ArgumentFormatException("All rows must have the same fields in the same order");
+            }
+            values.add(row.stream().map(FieldPair::getValue).toArray());
+        }
+        try {
+            inTransaction(conn -> {
+                insertBatch(conn, tableName, names, values, null);
+                return true;
+            });
+            evictTable(tableName);
+            return true;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+
     /**
      * Update a generic type column value of a record by a primary key of any type
      *
@@ -295,6 +429,7 @@ public class AdeOrm implements Mapper {
             PreparedStatement ps = conn.prepareStatement(sql)){
             MapperUtil.setPs(ps, newColumnValue, idValue);
             ps.executeUpdate();
+            evictTable(tableName);
         } catch (SQLException e) {
             throw new ArgumentFormatException("Arguments format are not correct", e);
         }
@@ -326,6 +461,7 @@ public class AdeOrm implements Mapper {
             PreparedStatement ps = conn.prepareStatement(sql)){
             MapperUtil.setPs(ps, fieldValues);
             ps.executeUpdate();
+            evictTable(tableName);
             return true;
         } catch (SQLException e) {
             throw new ArgumentFormatException("Arguments format are not correct", e);
@@ -334,51 +470,125 @@ public class AdeOrm implements Mapper {
 
     /**
      * Update multiple generic type columns values of a record by a primary key of any type
-     * using just an object
+     * using just an object. For a record loaded or written through this orm only the
+     * columns changed since then are written, and nothing is sent if none changed.
+     * In a write-behind session the update is queued and the columns changed are found
+     * when the session flushes.
      * @param object record to be updated
-     * @return
+     * @return true if the record is up to date, false if no record has the primary key
      */
     public boolean update(Object object) throws ArgumentFormatException {
         if (object==null) return false;
 
-        Object theRecord;
+        ColumnMetadata pk = requirePrimaryKey();
+        UnitOfWork work = unitOfWork();
+        if (work != null) {
+            return work.update(this, metadata, object);
+        }
+        BitSet changed = changedColumns(object);
+        if (changed.isEmpty()) {
+            return true;
+        }
+        List<ColumnMetadata> columns = columnsOf(changed);
+        String sql = updateSql(changed, columns);
+        Object[] values = Arrays.copyOf(columnValues(object, columns), columns.size() + 1);
+        values[columns.size()] = pk.get(object);
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            MapperUtil.setPs(ps, values);
+            if (ps.executeUpdate() == 0) {
+                return false;
+            }
+            updated(object);
+            return true;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
 
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
-        List<FieldPair> fieldPairList = MapperUtil.parseFields(object);
-        String tableName = table.tableName();
-        String sql = "update " + tableName + " set ";
-        String columnName;
-        Object columnValue;
-        String id = "";
-        Object pk = null;
-
-        for (int i=0; i< fieldPairList.size(); i++) {
-            if (!fieldPairList.get(i).isPrimaryKey()) {
-                columnName = fieldPairList.get(i).getName();
-                columnValue = fieldPairList.get(i).getValue();
-                sql += columnName + " = " + "'" + columnValue + "'" + ", ";
+    /**
+     * Insert a POJO of the orm class, or update every column of the record with its
+     * primary key, in a single statement. A POJO with an int primary key of 0 is
+     * always new and is added with a generated key.
+     *
+     * @param pojo POJO to be saved
+     * @return true when the record is written
+     */
+    public boolean upsert(Object pojo) throws ArgumentFormatException {
+        if (pojo == null) {
+            return false;
+        }
+        requirePrimaryKey();
+        if (hasDefaultKey(pojo)) {
+            return add(pojo);
+        }
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(upsertSql(conn))) {
+            MapperUtil.setPs(ps, columnValues(pojo, metadata.getColumns()));
+            ps.executeUpdate();
+            saved(pojo);
+            return true;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+    /**
+     * Same as upsert
+     *
+     * @param pojo POJO to be saved
+     * @return true when the record is written
+     */
+    public boolean save(Object pojo) throws ArgumentFormatException {
+        return upsert(pojo);
+    }
+
+    /**
+     * Upsert many POJOs of the orm class with JDBC batches of batchSize rows in a
+     * single transaction. POJOs with an int primary key of 0 are added with generated keys.
+     *
+     * @param pojos POJOs to be saved
+     * @return true when all records are written
+     */
+    public boolean upsertAll(Collection<?> pojos) throws ArgumentFormatException {
+        if (pojos == null) {
+            throw new ArgumentFormatException();
+        }
+        requirePrimaryKey();
+        List<Object> newPojos = new ArrayList<>();
+        List<Object[]> newRows = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (Object pojo : pojos) {
+            if (hasDefaultKey(pojo)) {
+                newPojos.add(pojo);
+                newRows.add(columnValues(pojo, metadata.getNonKeyColumns()));
             } else {
-                id = fieldPairList.get(i).getName();
-                pk = fieldPairList.get(i).getValue();
+                rows.add(columnValues(pojo, metadata.getColumns()));
             }
         }
         try {
-            theRecord = get(id, pk);
-            sql = sql.substring(0, sql.length()-2);
-            sql += " where " + id + " = " + pk;
-            System.out.println(sql);
-
-            try (Connection conn = ConnectionUtil.getConnection()) {
-                Statement s = conn.createStatement();
-                s.execute(sql);
+            inTransaction(conn -> {
+                insertBatch(conn, metadata.getTableName(), columnNames(metadata.getNonKeyColumns()),
+                        newRows, newPojos);
+                if (!rows.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(upsertSql(conn))) {
+                        for (int i = 0; i < rows.size(); i++) {
+                            MapperUtil.setPs(ps, rows.get(i));
+                            ps.addBatch();
+                            if ((i + 1) % batchSize == 0 || i == rows.size() - 1) {
+                                ps.executeBatch();
+                            }
+                        }
+                    }
+                }
                 return true;
-            } catch (SQLException throwables) {
-                throwables.printStackTrace();
-            }
-        } catch (ArgumentFormatException e) {
+            });
+            pojos.forEach(this::saved);
+            return true;
+        } catch (SQLException e) {
             throw new ArgumentFormatException("Arguments format are not correct", e);
         }
-        return false;
     }
 
 
@@ -400,6 +610,7 @@ public class AdeOrm implements Mapper {
             PreparedStatement ps = conn.prepareStatement(sql)){
             MapperUtil.setPs(ps, idValue);
             ps.executeUpdate();
+            evictTable(tableName);
         } catch (SQLException e) {
             throw new ArgumentFormatException("Arguments format are not correct", e);
         }
@@ -407,119 +618,462 @@ public class AdeOrm implements Mapper {
     }
 
 
+    /**
+     * Delete the record of a POJO by its primary key. In a write-behind session the delete
+     * of a POJO of the orm class is queued until the session flushes.
+     *
+     * @param object record to be deleted
+     * @return true when the statement ran
+     */
     public boolean delete(Object object) throws ArgumentFormatException {
         if (object == null) return false;
 
-        String id = "";
-        Object pk = null;
-        Object theRecord;
-
-        List<FieldPair> fieldPairList = MapperUtil.parseFields(object);
-        String tableName = object.getClass().getSimpleName();
-        String sql = "delete from ";
+        EntityMetadata objectMetadata = EntityMetadata.of(object.getClass());
+        ColumnMetadata pk = objectMetadata.getPrimaryKey();
+        if (pk == null) {
+            throw new ArgumentFormatException(object.getClass().getSimpleName() + " has no @PrimaryKey field");
+        }
+        UnitOfWork work = unitOfWork();
+        if (work != null && objectMetadata == metadata) {
+            work.delete(this, metadata, object);
+            IdentityMap.current().evict(metadata, pk.get(object));
+            return true;
+        }
+        String sql = SqlCache.get(objectMetadata.getType(), "delete", Collections.emptyList(), () ->
+                "delete from " + objectMetadata.getTableName() + " where " + pk.getName() + " = ?");
 
-        for (int i = 0; i< fieldPairList.size(); i++) {
-            if (fieldPairList.get(i).isPrimaryKey()) {
-                id = fieldPairList.get(i).getName();
-                pk = fieldPairList.get(i).getValue();
-                sql += tableName + " where " + id + " = " + pk;
+        try(Connection conn = getConnection();
+            PreparedStatement ps = conn.prepareStatement(sql)){
+            MapperUtil.setPs(ps, pk.get(object));
+            ps.executeUpdate();
+            EntitySnapshots.remove(object);
+            IdentityMap map = IdentityMap.current();
+            if (map != null) {
+                map.evict(objectMetadata, pk.get(object));
             }
-        }
-        try(Connection conn = ConnectionUtil.getConnection();
-            Statement s = conn.createStatement()){
-            s.execute(sql);
+            invalidate(objectMetadata.getTableName(), pk.get(object));
             return true;
         } catch (SQLException e) {
             throw new ArgumentFormatException("Arguments format are not correct", e);
         }
     }
 
-
     /**
-     * Get a record of a table by a column with unique value
+     * Delete many records of the orm class in a single transaction, with one set-based
+     * statement per batchSize keys.
      *
-     * @param uniCol column name with unique constraint
-     * @param colValue column value of a record to be retrieve
-     * @return an object of the default pojo class for the record
+     * @param entitiesOrIds POJOs of the orm class or primary key values
+     * @return number of records deleted
      */
-    @Override
-    public Object get(String uniCol, Object colValue) throws ArgumentFormatException {
-        if (uniCol == null || colValue == null) {
-            return null;
+    public int deleteAll(Collection<?> entitiesOrIds) throws ArgumentFormatException {
+        if (entitiesOrIds == null) {
+            throw new ArgumentFormatException();
         }
-        if (!MapperUtil.isUnique(clazz, uniCol)) {
-            throw new ArgumentFormatException("The method only accepts using primary key to query");
+        ColumnMetadata pk = requirePrimaryKey();
+        List<Object> keys = new ArrayList<>(entitiesOrIds.size());
+        for (Object item : entitiesOrIds) {
+            keys.add(metadata.getType().isInstance(item) ? pk.get(item) : item);
         }
-
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
-        String sql = "select * from " + table.tableName() + " where " + uniCol + "=?";
-        Object object = null;
         try {
-            Constructor<?> constructor = clazz.getConstructor();
-            object = constructor.newInstance();
-
-        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+            int deleted = inTransaction(conn -> deleteKeys(conn, keys));
+            deleted(entitiesOrIds, keys);
+            return deleted;
+        } catch (SQLException e) {
             throw new ArgumentFormatException("Arguments format are not correct", e);
         }
-        Field[] fields = clazz.getDeclaredFields();
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            MapperUtil.setPs(ps, colValue);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                for (int i = 0; i < fields.length; i++) {
-                    ColumnName c = fields[i].getDeclaredAnnotation(ColumnName.class);
-                    MapperUtil.setField(object, fields[i], rs.getString(c.columnName()));
-                }
+    }
+
+    /**
+     * Delete records by primary key, with one set-based statement per batchSize keys
+     *
+     * @return number of records deleted
+     */
+    private int deleteKeys(Connection conn, List<Object> keys) throws SQLException {
+        Dialect dialect = Dialect.of(conn);
+        int count = 0;
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<Object> chunk = keys.subList(from, Math.min(keys.size(), from + batchSize));
+            try (PreparedStatement ps = prepareForKeys(conn, dialect,
+                    "delete from " + metadata.getTableName(), chunk)) {
+                count += ps.executeUpdate();
             }
-        } catch (SQLException e) {
-            throw new ArgumentFormatException("Arguments format are not correct", e);
         }
-        return object;
+        return count;
     }
 
+    /**
+     * Forget deleted records: their snapshots, the session identity map and the caches
+     */
+    private void deleted(Collection<?> entitiesOrIds, List<Object> keys) {
+        for (Object item : entitiesOrIds) {
+            EntitySnapshots.remove(item);
+        }
+        IdentityMap map = IdentityMap.current();
+        for (Object key : keys) {
+            if (map != null) {
+                map.evict(metadata, key);
+            }
+            invalidate(metadata.getTableName(), key);
+        }
+    }
 
     /**
-     * Get values of a record by  a column with unique value
+     * Update many records of the orm class in a single transaction. Records are grouped
+     * by the columns changed since they were loaded, each group is sent as one JDBC batch,
+     * records without changes are skipped.
      *
-     * @param uniCol column name with unique constraint
-     * @param colValue column value of a record to be retrieve
-     * @return a list of field values required by user for a record
+     * @param pojos records to be updated
+     * @return number of records updated
      */
-    public List<Object> getColumns(String uniCol, Object colValue, String... columnNames) throws ArgumentFormatException {
-        if (columnNames == null || uniCol == null || colValue == null) {
-            return null;
+    public int updateAll(Collection<?> pojos) throws ArgumentFormatException {
+        if (pojos == null) {
+            throw new ArgumentFormatException();
         }
-        if (!MapperUtil.isUnique(clazz, uniCol)) {
-            throw new ArgumentFormatException("The method only accepts using primary key or column with unique value" +
-                    "to query");
+        requirePrimaryKey();
+        Map<BitSet, List<Object>> groups = changedGroups(pojos);
+        try {
+            int updated = inTransaction(conn -> updateGroups(conn, groups));
+            groups.values().forEach(rows -> rows.forEach(this::updated));
+            return updated;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
         }
+    }
 
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
+    /**
+     * @return the records with changes grouped by the columns changed
+     */
+    private Map<BitSet, List<Object>> changedGroups(Collection<?> pojos) {
+        Map<BitSet, List<Object>> groups = new LinkedHashMap<>();
+        for (Object pojo : pojos) {
+            BitSet changed = changedColumns(pojo);
+            if (!changed.isEmpty()) {
+                groups.computeIfAbsent(changed, k -> new ArrayList<>()).add(pojo);
+            }
+        }
+        return groups;
+    }
 
-        String s = Arrays.stream(columnNames).collect(Collectors.joining(", ","",""));
-        String sql = "select " + s + " from " + table.tableName() + " where " + uniCol + "=?";
-        List<Object> result = new ArrayList<>();
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            Class<?> clazz = PreparedStatement.class;
-            MapperUtil.setPs(ps, colValue);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                for (int i = 0; i < columnNames.length; i++) {
-                    result.add(rs.getString(columnNames[i]));
+    /**
+     * Update each group of records with one JDBC batch per batchSize records
+     *
+     * @return number of records updated
+     */
+    private int updateGroups(Connection conn, Map<BitSet, List<Object>> groups) throws SQLException {
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        int count = 0;
+        for (Map.Entry<BitSet, List<Object>> group : groups.entrySet()) {
+            List<ColumnMetadata> columns = columnsOf(group.getKey());
+            try (PreparedStatement ps = conn.prepareStatement(updateSql(group.getKey(), columns))) {
+                List<Object> rows = group.getValue();
+                for (int i = 0; i < rows.size(); i++) {
+                    Object[] values = Arrays.copyOf(columnValues(rows.get(i), columns), columns.size() + 1);
+                    values[columns.size()] = pk.get(rows.get(i));
+                    MapperUtil.setPs(ps, values);
+                    ps.addBatch();
+                    if ((i + 1) % batchSize == 0 || i == rows.size() - 1) {
+                        count += sum(ps.executeBatch());
+                    }
                 }
             }
-        } catch (SQLException e) {
-            throw new ArgumentFormatException("Arguments format are not correct", e);
         }
-        return result;
+        return count;
     }
 
+    /**
+     * Insert the POJOs queued by a write-behind session, see UnitOfWork
+     */
+    void flushInserts(Connection conn, List<Object> pojos) throws SQLException {
+        if (!pojos.isEmpty()) {
+            insertRows(conn, pojos);
+            pojos.forEach(this::saved);
+        }
+    }
 
     /**
-     * Get record(s) filter by a column value.
-     * If primary key or unique column is used, only return one record, else
+     * Update the POJOs queued by a write-behind session, see UnitOfWork
+     */
+    void flushUpdates(Connection conn, List<Object> pojos) throws SQLException {
+        Map<BitSet, List<Object>> groups = changedGroups(pojos);
+        if (!groups.isEmpty()) {
+            updateGroups(conn, groups);
+            groups.values().forEach(rows -> rows.forEach(this::updated));
+        }
+    }
+
+    /**
+     * Delete the POJOs queued by a write-behind session, see UnitOfWork
+     */
+    void flushDeletes(Connection conn, List<Object> pojos) throws SQLException {
+        if (!pojos.isEmpty()) {
+            ColumnMetadata pk = metadata.getPrimaryKey();
+            List<Object> keys = pojos.stream().map(pk::get).collect(Collectors.toList());
+            deleteKeys(conn, keys);
+            deleted(pojos, keys);
+        }
+    }
+
+    /**
+     * Delete the records matching all ("and") or any ("or") of the conditions in one statement
+     *
+     * @param conditions column names and values to match, at least one
+     * @param criterion "and" or "or"
+     * @return number of records deleted
+     */
+    public int deleteWhere(List<FieldPair> conditions, String criterion) throws ArgumentFormatException {
+        if (conditions == null || conditions.isEmpty() || criterion == null) {
+            throw new ArgumentFormatException("deleteWhere needs at least one condition");
+        }
+        String sql = "delete from " + metadata.getTableName() + " where " + whereClause(conditions, criterion);
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            MapperUtil.setPs(ps, conditions.stream().map(FieldPair::getValue).toArray());
+            int deleted = ps.executeUpdate();
+            evictTable(metadata.getTableName());
+            return deleted;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+    /**
+     * Set columns of the records matching all ("and") or any ("or") of the conditions in one statement
+     *
+     * @param fieldPairs columns being updated along with their values
+     * @param conditions column names and values to match, at least one
+     * @param criterion "and" or "or"
+     * @return number of records updated
+     */
+    public int updateWhere(List<FieldPair> fieldPairs, List<FieldPair> conditions, String criterion)
+            throws ArgumentFormatException {
+        if (fieldPairs == null || fieldPairs.isEmpty() || conditions == null || conditions.isEmpty() ||
+                criterion == null) {
+            throw new ArgumentFormatException("updateWhere needs at least one column and one condition");
+        }
+        String sql = "update " + metadata.getTableName() + " set " +
+                checkColumns(fieldPairs).stream().map(f -> f.getName() + " = ?").collect(Collectors.joining(", ")) +
+                " where " + whereClause(conditions, criterion);
+        Object[] values = Stream.concat(fieldPairs.stream(), conditions.stream())
+                .map(FieldPair::getValue).toArray();
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            MapperUtil.setPs(ps, values);
+            int updated = ps.executeUpdate();
+            evictTable(metadata.getTableName());
+            return updated;
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+
+    /**
+     * Get a record of a table by a column with unique value, inside a session a record
+     * already read in the session is returned without a query, a @Cacheable record
+     * read by primary key may come from the entity cache
+     *
+     * @param uniCol column name with unique constraint
+     * @param colValue column value of a record to be retrieve
+     * @return an object of the default pojo class for the record
+     */
+    @Override
+    public Object get(String uniCol, Object colValue) throws ArgumentFormatException {
+        if (uniCol == null || colValue == null) {
+            return null;
+        }
+        if (!metadata.isUnique(uniCol)) {
+            throw new ArgumentFormatException("The method only accepts using primary key to query");
+        }
+        if (coalescing()) {
+            return SingleFlight.run(Arrays.asList("get", metadata.getType(), uniCol, colValue),
+                    () -> read(uniCol, colValue), this::copy);
+        }
+        return read(uniCol, colValue);
+    }
+
+    private Object read(String uniCol, Object colValue) throws ArgumentFormatException {
+        IdentityMap identityMap = IdentityMap.current();
+        Object managed = identityMap == null ? null : identityMap.find(metadata, uniCol, colValue);
+        if (managed != null) {
+            return managed;
+        }
+        EntityCache cache = metadata.getColumn(uniCol).isPrimaryKey() ? entityCache() : null;
+        Object cached = cache == null ? null : cache.load(colValue, Lazy.Batches.of(metadata));
+        if (cached != null) {
+            return track(cached);
+        }
+        long stamp = cache == null ? 0 : cache.stamp();
+
+        String sql = SqlCache.get(metadata.getType(), "get", Collections.singletonList(uniCol), () ->
+                "select * from " + metadata.getTableName() + " where " + uniCol + "=?");
+        Object object = null;
+        try {
+            object = metadata.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+        try(Connection conn = getConnection();
+            PreparedStatement ps = conn.prepareStatement(sql)){
+            MapperUtil.setPs(ps, colValue);
+            ResultSet rs = ps.executeQuery();
+            RowDecoder decoder = RowDecoder.of(metadata, rs);
+            while (rs.next()) {
+                decoder.decodeInto(object, rs);
+                if (cache != null) {
+                    cache.put(object, stamp);
+                }
+                object = track(object);
+            }
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+        return object;
+    }
+
+
+    /**
+     * Get the records of many primary keys with a few queries instead of one per key.
+     * Keys are sent in chunks of batchSize, bound as one array ("pk = any(?)") on
+     * PostgreSQL or as an "in" list elsewhere. Keys must have the boxed type of the
+     * primary key field. Inside a session the keys already read are answered from
+     * its identity map without a query, then @Cacheable rows from the entity cache.
+     *
+     * @param ids primary key values
+     * @return the records found in request order and the keys that were not found
+     */
+    public MultiGetResult getByIds(Collection<?> ids) throws ArgumentFormatException {
+        if (ids == null) {
+            return null;
+        }
+        ColumnMetadata pk = requirePrimaryKey();
+        List<Object> keys = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (coalescing()) {
+            return SingleFlight.run(Arrays.asList("getByIds", metadata.getType(), keys),
+                    () -> readByIds(pk, keys), this::copy);
+        }
+        return readByIds(pk, keys);
+    }
+
+    private MultiGetResult readByIds(ColumnMetadata pk, List<Object> keys) throws ArgumentFormatException {
+        Map<Object, Object> loaded = new HashMap<>();
+        List<Object> unread = keys;
+        IdentityMap identityMap = IdentityMap.current();
+        if (identityMap != null) {
+            unread = new ArrayList<>();
+            for (Object key : keys) {
+                Object managed = identityMap.find(metadata, pk.getName(), key);
+                if (managed != null) {
+                    loaded.put(key, managed);
+                } else {
+                    unread.add(key);
+                }
+            }
+        }
+        EntityCache cache = entityCache();
+        long stamp = 0;
+        if (cache != null) {
+            stamp = cache.stamp();
+            List<Object> uncached = new ArrayList<>();
+            Lazy.Batches lazyBatches = Lazy.Batches.of(metadata);
+            for (Object key : unread) {
+                Object cached = cache.load(key, lazyBatches);
+                if (cached != null) {
+                    loaded.put(key, track(cached));
+                } else {
+                    uncached.add(key);
+                }
+            }
+            unread = uncached;
+        }
+        try (Connection conn = unread.isEmpty() ? null : getConnection()) {
+            Dialect dialect = conn == null ? null : Dialect.of(conn);
+            for (int from = 0; from < unread.size(); from += batchSize) {
+                List<Object> chunk = unread.subList(from, Math.min(unread.size(), from + batchSize));
+                try (PreparedStatement ps = prepareForKeys(conn, dialect,
+                        "select * from " + metadata.getTableName(), chunk)) {
+                    ResultSet rs = ps.executeQuery();
+                    RowDecoder decoder = RowDecoder.of(metadata, rs);
+                    while (rs.next()) {
+                        Object entity = decoder.decode(rs);
+                        if (cache != null) {
+                            cache.put(entity, stamp);
+                        }
+                        entity = track(entity);
+                        loaded.put(pk.get(entity), entity);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+
+        Map<Object, Object> found = new LinkedHashMap<>();
+        List<Object> missing = new ArrayList<>();
+        for (Object key : keys) {
+            Object entity = loaded.get(key);
+            if (entity != null) {
+                found.put(key, entity);
+            } else {
+                missing.add(key);
+            }
+        }
+        return new MultiGetResult(found, missing);
+    }
+
+
+    /**
+     * Get values of a record by  a column with unique value
+     *
+     * @param uniCol column name with unique constraint
+     * @param colValue column value of a record to be retrieve
+     * @return a list of field values required by user for a record
+     */
+    public List<Object> getColumns(String uniCol, Object colValue, String... columnNames) throws ArgumentFormatException {
+        if (coalescing() && uniCol != null && colValue != null && columnNames != null) {
+            return SingleFlight.run(Arrays.asList("getColumns", metadata.getType(), uniCol, colValue,
+                    Arrays.asList(columnNames)), () -> readColumns(uniCol, colValue, columnNames), ArrayList::new);
+        }
+        return readColumns(uniCol, colValue, columnNames);
+    }
+
+    private List<Object> readColumns(String uniCol, Object colValue, String... columnNames)
+            throws ArgumentFormatException {
+        List<List<Object>> rows = getColumns(Projection.text(), uniCol, colValue, columnNames);
+        if (rows == null) {
+            return null;
+        }
+        return rows.isEmpty() ? new ArrayList<>() : rows.get(0);
+    }
+
+    /**
+     * Get values of a record by a column with unique value, mapped by a projection
+     *
+     * @param projection Projection.to(SomeDto.class) or Projection.rows()
+     * @param uniCol column name with unique constraint
+     * @param colValue column value of a record to be retrieve
+     * @return the record in the projection result, empty if there is none
+     */
+    public <R> R getColumns(Projection<R> projection, String uniCol, Object colValue, String... columnNames)
+            throws ArgumentFormatException {
+        if (columnNames == null || uniCol == null || colValue == null) {
+            return null;
+        }
+        if (!metadata.isUnique(uniCol)) {
+            throw new ArgumentFormatException("The method only accepts using primary key or column with unique value" +
+                    "to query");
+        }
+
+        String sql = "select " + String.join(", ", columnNames) + " from " + metadata.getTableName() +
+                " where " + uniCol + "=?";
+        return select(sql, ownTable(), Arrays.asList(columnNames), projection, colValue);
+    }
+
+
+    /**
+     * Get record(s) filter by a column value.
+     * If primary key or unique column is used, only return one record, else
      * return all records with the column value in the order specify
      *
      * @param columnNames a list of column names of the table to retrieve
@@ -531,6 +1085,17 @@ public class AdeOrm implements Mapper {
      */
     public List<List<Object>> getRecordsInOrder(List<String> columnNames, String fieldName, Object fieldValue,
                                         String orderCol, String order) throws ArgumentFormatException {
+        return getRecordsInOrder(Projection.text(), columnNames, fieldName, fieldValue, orderCol, order);
+    }
+
+    /**
+     * Get record(s) filter by a column value in order, mapped by a projection
+     *
+     * @param projection Projection.to(SomeDto.class) or Projection.rows()
+     * @see #getRecordsInOrder(List, String, Object, String, String)
+     */
+    public <R> R getRecordsInOrder(Projection<R> projection, List<String> columnNames, String fieldName,
+                                   Object fieldValue, String orderCol, String order) throws ArgumentFormatException {
         if (fieldName == null || fieldValue == null || orderCol == null || order == null) {
             return null;
         }
@@ -538,28 +1103,11 @@ public class AdeOrm implements Mapper {
             throw new ArgumentFormatException("Order must be in \"asc\" or \"desc\"");
         }
 
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
         String colNames = String.join(", ", columnNames);
 
-        String sql = "select " + colNames + " from " + table.tableName() + " where " + fieldName + "=?" +
+        String sql = "select " + colNames + " from " + metadata.getTableName() + " where " + fieldName + "=?" +
                         " order by " + orderCol + " " + order;
-
-        List<List<Object>> result = new ArrayList<>();
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            MapperUtil.setPs(ps, fieldValue);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                List<Object> record = new ArrayList<>();
-                for (int i = 0; i < columnNames.size(); i++) {
-                    record.add(rs.getString(columnNames.get(i)));
-                }
-                result.add(record);
-            }
-        } catch (SQLException e) {
-            throw new ArgumentFormatException("Arguments format are not correct", e);
-        }
-        return result;
+        return select(sql, ownTable(), columnNames, projection, fieldValue);
     }
 
 
@@ -569,29 +1117,19 @@ public class AdeOrm implements Mapper {
      * @return all records of the table
      */
     public List<Object> getAll() throws ArgumentFormatException {
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
-        String sql = "select * from " + table.tableName();
-        Object object = null;
-        Constructor<?> constructor;
-        Field[] fields = clazz.getDeclaredFields();
-
-        List<Object> result = new ArrayList<>();
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            constructor = clazz.getConstructor();
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                object = constructor.newInstance();
-                for (int i = 0; i < fields.length; i++) {
-                    ColumnName c = fields[i].getDeclaredAnnotation(ColumnName.class);
-                    MapperUtil.setField(object, fields[i], rs.getString(c.columnName()));
+        String sql = "select * from " + metadata.getTableName();
+        try {
+            return query(sql, new Object[0], ownTable(), rs -> {
+                List<Object> result = new ArrayList<>();
+                RowDecoder decoder = RowDecoder.of(metadata, rs);
+                while (rs.next()) {
+                    result.add(track(decoder.decode(rs)));
                 }
-                result.add(object);
-            }
-        } catch (SQLException | InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                return result;
+            });
+        } catch (SQLException e) {
             throw new ArgumentFormatException("Argument formats are not correct", e);
         }
-        return result;
     }
 
 
@@ -610,30 +1148,183 @@ public class AdeOrm implements Mapper {
             throw new ArgumentFormatException("Order must be in \"asc\" or \"desc\"");
         }
 
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
-        String sql = "select * from " + table.tableName() + " order by " + orderCol + " " + order;
-        Object object = null;
-        Constructor<?> constructor;
-        Field[] fields = clazz.getDeclaredFields();
-        List<Object> result = new ArrayList<>();
+        String sql = "select * from " + metadata.getTableName() + " order by " + orderCol + " " + order;
+        try {
+            return query(sql, new Object[0], ownTable(), rs -> {
+                List<Object> result = new ArrayList<>();
+                RowDecoder decoder = RowDecoder.of(metadata, rs);
+                while (rs.next()) {
+                    result.add(track(decoder.decode(rs)));
+                }
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Argument formats are not correct", e);
+        }
+    }
+
+
+    /**
+     * Get one page of records in order using keyset pagination: the page starts right
+     * after the row identified by afterKey, so reading a deep page costs the same as
+     * the first one. Ties on the order column are broken by the primary key. The order
+     * column should not contain nulls.
+     *
+     * @param orderCol the column to order by
+     * @param order "asc" for ascending, "desc" for descending
+     * @param afterKey cursor of the previous page, null for the first page
+     * @param limit maximum number of records in the page
+     * @return the records of the page with the cursor of the next page
+     */
+    public Page page(String orderCol, String order, String afterKey, int limit) throws ArgumentFormatException {
+        if (orderCol == null || order == null) {
+            return null;
+        }
+        if (!order.equals("asc") && !order.equals("desc")) {
+            throw new ArgumentFormatException("Order must be in \"asc\" or \"desc\"");
+        }
+        ColumnMetadata orderColumn = metadata.getColumn(orderCol);
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        if (orderColumn == null || pk == null || limit < 1) {
+            throw new ArgumentFormatException("Page needs a column of " + metadata.getTableName() +
+                    ", a primary key and a positive limit");
+        }
+        boolean byKeyOnly = orderColumn == pk;
+        String comparison = order.equals("asc") ? " > " : " < ";
+        String sql = "select * from " + metadata.getTableName();
+        Object[] keyValues = new Object[0];
+        if (afterKey != null) {
+            keyValues = byKeyOnly ? CursorToken.decode(afterKey, pk.getType()) :
+                    CursorToken.decode(afterKey, orderColumn.getType(), pk.getType());
+            sql += byKeyOnly ? " where " + pk.getName() + comparison + "?" :
+                    " where (" + orderCol + ", " + pk.getName() + ")" + comparison + "(?, ?)";
+        }
+        sql += " order by " + orderCol + " " + order + (byKeyOnly ? "" : ", " + pk.getName() + " " + order) +
+                " limit " + (limit + 1);
+
+        List<Object> items = new ArrayList<>();
+        boolean hasNext = false;
         try(Connection conn = getConnection();
             PreparedStatement ps = conn.prepareStatement(sql)){
-            constructor = clazz.getConstructor();
+            MapperUtil.setPs(ps, keyValues);
             ResultSet rs = ps.executeQuery();
+            RowDecoder decoder = RowDecoder.of(metadata, rs);
             while (rs.next()) {
-                object = constructor.newInstance();
-                for (int i = 0; i < fields.length; i++) {
-                    ColumnName c = fields[i].getDeclaredAnnotation(ColumnName.class);
-                    MapperUtil.setField(object, fields[i], rs.getString(c.columnName()));
+                if (items.size() == limit) {
+                    hasNext = true;
+                    break;
                 }
-                result.add(object);
+                items.add(track(decoder.decode(rs)));
             }
-        } catch (SQLException | InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            throw new ArgumentFormatException("Argument formats are not correct", e);
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            Object last = items.get(items.size() - 1);
+            nextCursor = byKeyOnly ? CursorToken.encode(pk.get(last)) :
+                    CursorToken.encode(orderColumn.get(last), pk.get(last));
         }
-        return result;
+        return new Page(items, nextCursor);
+    }
+
+    /**
+     * Iterate over all records in a table without loading them all in memory.
+     * Rows are read through a cursor fetchSize at a time; close the iterator when
+     * stopping before the last row.
+     *
+     * @return an iterator over the records of the table
+     */
+    public ResultIterator iterate() throws ArgumentFormatException {
+        return openCursor("select * from " + metadata.getTableName());
     }
 
+    /**
+     * Iterate over all records in a table in order without loading them all in memory
+     *
+     * @param orderCol the column to order by
+     * @param order "asc" for ascending, "desc" for descending
+     * @return an iterator over the records in specified order
+     */
+    public ResultIterator iterate(String orderCol, String order) throws ArgumentFormatException {
+        if (orderCol == null || order == null) {
+            return null;
+        }
+        if (!order.equals("asc") && !order.equals("desc")) {
+            throw new ArgumentFormatException("Order must be in \"asc\" or \"desc\"");
+        }
+        return openCursor("select * from " + metadata.getTableName() + " order by " + orderCol + " " + order);
+    }
+
+    /**
+     * Stream all records in a table, mapped lazily from a cursor.
+     * Use in try-with-resources, closing the stream releases the connection.
+     *
+     * @return a stream of the records of the table
+     */
+    public Stream<Object> stream() throws ArgumentFormatException {
+        return iterate().stream();
+    }
+
+    /**
+     * Stream all records in a table in order, mapped lazily from a cursor.
+     * Use in try-with-resources, closing the stream releases the connection.
+     *
+     * @param orderCol the column to order by
+     * @param order "asc" for ascending, "desc" for descending
+     * @return a stream of the records in specified order
+     */
+    public Stream<Object> stream(String orderCol, String order) throws ArgumentFormatException {
+        ResultIterator iterator = iterate(orderCol, order);
+        return iterator == null ? null : iterator.stream();
+    }
+
+
+    /**
+     * Start a query on the table of the orm class, see Query and Criterion
+     *
+     * @return a new query selecting all records
+     */
+    public Query query() {
+        return new Query(this, metadata);
+    }
+
+    /**
+     * Count the records of the table with "select count(*)"
+     *
+     * @return number of records
+     */
+    public long count() throws ArgumentFormatException {
+        return query().count();
+    }
+
+    /**
+     * Check whether a record matches a criterion without reading it
+     *
+     * @param criterion criterion to match, null for any record
+     * @return true if at least one record matches
+     */
+    public boolean exists(Criterion criterion) throws ArgumentFormatException {
+        return query().where(criterion).exists();
+    }
+
+    /**
+     * Batch fetch @Reference fields of entities already read, e.g. a page of getAll,
+     * with one IN query per batch of distinct foreign keys instead of one per entity
+     *
+     * @param entities entities of the orm class
+     * @param references names of @Reference fields
+     */
+    public void fetchReferences(Collection<?> entities, String... references) throws ArgumentFormatException {
+        for (String name : references) {
+            ReferenceMetadata reference = metadata.getReference(name);
+            if (reference == null) {
+                throw new ArgumentFormatException(name + " is not a @Reference of " + clazz.getName());
+            }
+            ReferenceLoader.load(entities, reference, batchSize);
+        }
+    }
 
     /**
      * Get specific columns of records filter by a list of fields (key, value) pairs under
@@ -646,12 +1337,22 @@ public class AdeOrm implements Mapper {
      */
     public List<List<Object>> getWithCriterion(List<String> columnNames,
                                   List<FieldPair> fieldPairs, String criterion) throws ArgumentFormatException {
+        return getWithCriterion(Projection.text(), columnNames, fieldPairs, criterion);
+    }
+
+    /**
+     * Get specific columns of records filter by field pairs, mapped by a projection
+     *
+     * @param projection Projection.to(SomeDto.class) or Projection.rows()
+     * @see #getWithCriterion(List, List, String)
+     */
+    public <R> R getWithCriterion(Projection<R> projection, List<String> columnNames,
+                                  List<FieldPair> fieldPairs, String criterion) throws ArgumentFormatException {
         if (columnNames == null || fieldPairs == null || criterion == null) {
             return null;
         }
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
         String colNames = String.join(", ", columnNames);
-        String sql = "select " + colNames + " from " + table.tableName() + " where ";
+        String sql = "select " + colNames + " from " + metadata.getTableName() + " where ";
 
         if (criterion.equals("and")) {
             sql += fieldPairs.stream().map(FieldPair::getName).collect(Collectors.joining("=? and ")) + "=?";
@@ -662,24 +1363,7 @@ public class AdeOrm implements Mapper {
         }
 
         Object[] fieldValues = fieldPairs.stream().map(FieldPair::getValue).toArray();
-        List<List<Object>> result = new ArrayList<>();
-        Method method = null;
-
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            MapperUtil.setPs(ps, fieldValues);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                List<Object> record = new ArrayList<>();
-                for (int i = 0; i < columnNames.size(); i++) {
-                    record.add(rs.getString(columnNames.get(i)));
-                }
-                result.add(record);
-            }
-        } catch (SQLException e) {
-            throw new ArgumentFormatException("Argument formats are not correct", e);
-        }
-        return result;
+        return select(sql, ownTable(), columnNames, projection, fieldValues);
     }
 
 
@@ -695,30 +1379,25 @@ public class AdeOrm implements Mapper {
      */
     public List<List<Object>> getJoint(String jType, String pkA, String tableB, String fkA,
                                        List<String> columnNames) throws ArgumentFormatException {
+        return getJoint(Projection.text(), jType, pkA, tableB, fkA, columnNames);
+    }
+
+    /**
+     * Get all records of join-tables, mapped by a projection
+     *
+     * @param projection Projection.to(SomeDto.class) or Projection.rows()
+     * @see #getJoint(String, String, String, String, List)
+     */
+    public <R> R getJoint(Projection<R> projection, String jType, String pkA, String tableB, String fkA,
+                          List<String> columnNames) throws ArgumentFormatException {
         if (pkA == null || tableB == null || fkA == null || columnNames == null) {
             return null;
         }
 
-        TableName tableA = clazz.getDeclaredAnnotation(TableName.class);
-
         String colNames = String.join(", ", columnNames);
-        String sql = "select " + colNames + " from " + tableA.tableName() + " " + jType + " join " + tableB +
+        String sql = "select " + colNames + " from " + metadata.getTableName() + " " + jType + " join " + tableB +
                 " on " + pkA + " = " + fkA;
-        List<List<Object>> result = new ArrayList<>();
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                List<Object> record = new ArrayList<>();
-                for (int i = 0; i < columnNames.size(); i++) {
-                    record.add(rs.getString(columnNames.get(i)));
-                }
-                result.add(record);
-            }
-        } catch (SQLException e) {
-            throw new ArgumentFormatException("Arguments format are not correct", e);
-        }
-        return result;
+        return select(sql, joinedTables(tableB), columnNames, projection);
     }
 
 
@@ -736,31 +1415,27 @@ public class AdeOrm implements Mapper {
      */
     public List<List<Object>> getJointWhere(String jType, String pkA, String tableB, String fkA,
                                  List<String> columnNames, String fieldName, Object fieldValue) throws ArgumentFormatException {
+        return getJointWhere(Projection.text(), jType, pkA, tableB, fkA, columnNames, fieldName, fieldValue);
+    }
+
+    /**
+     * Get record(s) of joint tables filter by a column value, mapped by a projection
+     *
+     * @param projection Projection.to(SomeDto.class) or Projection.rows()
+     * @see #getJointWhere(String, String, String, String, List, String, Object)
+     */
+    public <R> R getJointWhere(Projection<R> projection, String jType, String pkA, String tableB, String fkA,
+                               List<String> columnNames, String fieldName, Object fieldValue)
+            throws ArgumentFormatException {
         if (pkA == null || tableB == null || fkA == null || columnNames == null ||
                 fieldName == null || fieldValue == null) {
             return null;
         }
 
-        TableName tableA = clazz.getDeclaredAnnotation(TableName.class);
         String colNames = String.join(", ", columnNames);
-        String sql = "select " + colNames + " from " + tableA.tableName() + " " + jType + " join " + tableB +
+        String sql = "select " + colNames + " from " + metadata.getTableName() + " " + jType + " join " + tableB +
                 " on " + pkA + " = " + fkA + " where " + fieldName + "=?";
-        List<List<Object>> result = new ArrayList<>();
-        try(Connection conn = getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql)){
-            MapperUtil.setPs(ps, fieldValue);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                List<Object> record = new ArrayList<>();
-                for (int i = 0; i < columnNames.size(); i++) {
-                    record.add(rs.getString(columnNames.get(i)));
-                }
-                result.add(record);
-            }
-        } catch (SQLException e) {
-            throw new ArgumentFormatException("Arguments format are not correct", e);
-        }
-        return result;
+        return select(sql, joinedTables(tableB), columnNames, projection, fieldValue);
     }
 
 
@@ -768,10 +1443,11 @@ public class AdeOrm implements Mapper {
         if (columnName == null || id == null || idValue == null) {
             return false;
         }
-        TableName table = clazz.getDeclaredAnnotation(TableName.class);
-        String sql = "update " + table.tableName() + " set " + columnName + "= ? " + " where " + id + "=?";
+        String sql = SqlCache.get(metadata.getType(), "update2", Arrays.asList(columnName, id), () ->
+                "update " + metadata.getTableName() + " set " + columnName + "= ? " + " where " + id + "=?");
 
-        if (!isTransaction) {
+        Session session = Session.current();
+        if (session == null) {
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 MapperUtil.setPs(ps, newColumnValue, idValue);
@@ -786,7 +1462,7 @@ public class AdeOrm implements Mapper {
                 ps = conn.prepareStatement(sql);
                 MapperUtil.setPs(ps, newColumnValue, idValue);
                 if (ps.executeUpdate() == 0) {
-                    completes.add(false);
+                    session.setRollbackOnly();
                 }
             } catch (SQLException e) {
                 throw new ArgumentFormatException("Arguments format are not correct", e);
@@ -799,7 +1475,435 @@ public class AdeOrm implements Mapper {
                 }
             }
         }
+        evictTable(metadata.getTableName());
         return true;
     }
 
+    /**
+     * Run a select and collect its rows with a projection, column positions are resolved once
+     *
+     * @param tables tables read by the select
+     */
+    private <R> R select(String sql, List<String> tables, List<String> columnNames, Projection<R> projection,
+                         Object... values) throws ArgumentFormatException {
+        try {
+            return query(sql, values, tables, rs -> {
+                Projection.Collector<R> collector = projection.collector(rs, columnNames);
+                while (rs.next()) {
+                    collector.add(rs);
+                }
+                return collector.result();
+            });
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+    /**
+     * Run a select and read its rows, from the result cache when result caching is on
+     * and the transaction of the current thread has not written the tables
+     *
+     * @param tables tables read by the select, tagging its cached result
+     */
+    private <T> T query(String sql, Object[] values, List<String> tables, ResultHandler<T> handler)
+            throws SQLException {
+        Session session = Session.current();
+        boolean caching = resultCaching;
+        for (int i = 0; caching && session != null && i < tables.size(); i++) {
+            caching = !session.hasWritten(tables.get(i));
+        }
+        if (caching) {
+            CachedResult cached = ResultCache.get(sql, values);
+            if (cached != null) {
+                return handler.handle(cached.open());
+            }
+        }
+        long stamp = ResultCache.stamp();
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            MapperUtil.setPs(ps, values);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!caching) {
+                    return handler.handle(rs);
+                }
+                CachedResult result = CachedResult.of(rs);
+                ResultCache.put(sql, values, tables, result, stamp);
+                return handler.handle(result.open());
+            }
+        }
+    }
+
+    private List<String> ownTable() {
+        return Collections.singletonList(metadata.getTableName());
+    }
+
+    /**
+     * @param tableB joined table, optionally followed by an alias
+     */
+    private List<String> joinedTables(String tableB) {
+        return Arrays.asList(metadata.getTableName(), tableB.trim().split("\\s+")[0]);
+    }
+
+    /**
+     * Run work in the current transaction, or in a transaction of its own on a pooled connection
+     */
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        if (Session.current() != null) {
+            return work.run(getConnection());
+        }
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Execute a query as a server-side cursor. PostgreSQL only uses a cursor for the
+     * fetch size with autoCommit off, so outside a transaction the borrowed connection
+     * is switched to manual commit until the iterator is closed.
+     */
+    private ResultIterator openCursor(String sql) throws ArgumentFormatException {
+        Connection conn = getConnection();
+        boolean ownsConnection = Session.current() == null;
+        try {
+            if (ownsConnection) {
+                conn.setAutoCommit(false);
+            }
+            PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return new ResultIterator(conn, ownsConnection, ps, metadata);
+        } catch (SQLException e) {
+            if (ownsConnection) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+            }
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+    /**
+     * Prepare a statement restricted to a set of primary keys: "... where pk = any(?)" with
+     * an array parameter, or an "in" list padded to a power of two with the last key so
+     * that few statement shapes are used
+     *
+     * @param statement statement before the where clause, e.g. "delete from post"
+     */
+    private PreparedStatement prepareForKeys(Connection conn, Dialect dialect, String statement, List<Object> keys)
+            throws SQLException {
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        String where = statement + " where " + pk.getName();
+        if (dialect.supportsArrayParameters()) {
+            PreparedStatement ps = conn.prepareStatement(where + " = any(?)");
+            ps.setArray(1, conn.createArrayOf(dialect.arrayTypeName(pk.getType()), keys.toArray()));
+            return ps;
+        }
+        int size = Math.min(Integer.highestOneBit(keys.size() - 1) << 1, Math.max(batchSize, keys.size()));
+        size = Math.max(size, keys.size());
+        Object[] values = Arrays.copyOf(keys.toArray(), size);
+        Arrays.fill(values, keys.size(), size, keys.get(keys.size() - 1));
+        PreparedStatement ps = conn.prepareStatement(where + " in (" +
+                String.join(", ", Collections.nCopies(size, "?")) + ")");
+        MapperUtil.setPs(ps, values);
+        return ps;
+    }
+
+    /**
+     * Build "col = ? and col = ?" (or "or") from field pairs naming columns of the orm class
+     */
+    private String whereClause(List<FieldPair> conditions, String criterion) throws ArgumentFormatException {
+        if (!"and".equals(criterion) && !"or".equals(criterion)) {
+            throw new ArgumentFormatException("Criterion must be \"and\" or \"or\"");
+        }
+        return checkColumns(conditions).stream().map(f -> f.getName() + " = ?")
+                .collect(Collectors.joining(" " + criterion + " "));
+    }
+
+    private List<FieldPair> checkColumns(List<FieldPair> fieldPairs) throws ArgumentFormatException {
+        for (FieldPair fieldPair : fieldPairs) {
+            if (metadata.getColumn(fieldPair.getName()) == null) {
+                throw new ArgumentFormatException(fieldPair.getName() + " is not a column of " +
+                        metadata.getTableName());
+            }
+        }
+        return fieldPairs;
+    }
+
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+        }
+        return total;
+    }
+
+    /**
+     * Insert rows with one prepared statement, batchSize rows per executeBatch.
+     * With multiRowInserts each statement carries several rows. When keyTargets is
+     * given, the generated primary keys are written back into them in row order.
+     */
+    private void insertBatch(Connection conn, String tableName, List<String> columnNames,
+                             List<Object[]> rows, List<?> keyTargets) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        boolean generatedKey = keyTargets != null;
+        int rowsPerStatement = multiRowInserts ?
+                Math.max(1, Math.min(batchSize, MAX_BIND_PARAMETERS / Math.max(1, columnNames.size()))) : 1;
+        int statementsPerBatch = Math.max(1, batchSize / rowsPerStatement);
+        int fullStatements = rows.size() / rowsPerStatement;
+        int keyed = 0;
+
+        if (fullStatements > 0) {
+            String sql = insertSql(tableName, columnNames, rowsPerStatement);
+            try (PreparedStatement ps = prepareInsert(conn, sql, generatedKey)) {
+                for (int i = 0; i < fullStatements; i++) {
+                    MapperUtil.setPs(ps, flatten(rows, i * rowsPerStatement, rowsPerStatement));
+                    ps.addBatch();
+                    if ((i + 1) % statementsPerBatch == 0 || i == fullStatements - 1) {
+                        ps.executeBatch();
+                        if (generatedKey) {
+                            keyed = readGeneratedKeys(ps, keyTargets, keyed);
+                        }
+                    }
+                }
+            }
+        }
+        int remaining = rows.size() - fullStatements * rowsPerStatement;
+        if (remaining > 0) {
+            String sql = insertSql(tableName, columnNames, remaining);
+            try (PreparedStatement ps = prepareInsert(conn, sql, generatedKey)) {
+                MapperUtil.setPs(ps, flatten(rows, rows.size() - remaining, remaining));
+                ps.executeUpdate();
+                if (generatedKey) {
+                    readGeneratedKeys(ps, keyTargets, keyed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepare an insert, asking for the primary key column back when the database generates it
+     * (the PostgreSQL driver appends "returning" for it)
+     */
+    private PreparedStatement prepareInsert(Connection conn, String sql, boolean generatedKey) throws SQLException {
+        if (generatedKey) {
+            return conn.prepareStatement(sql, new String[]{metadata.getPrimaryKey().getName()});
+        }
+        return conn.prepareStatement(sql);
+    }
+
+    /**
+     * Write the generated keys of the last execution into the @PrimaryKey field of the POJOs
+     *
+     * @return index of the next POJO waiting for a key
+     */
+    private int readGeneratedKeys(PreparedStatement ps, List<?> pojos, int from) throws SQLException {
+        PropertyAccessor pk = metadata.getPrimaryKey().getAccessor();
+        int i = from;
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            while (i < pojos.size() && keys.next()) {
+                pk.setInt(pojos.get(i++), keys.getInt(1));
+            }
+        }
+        return i;
+    }
+
+    private String upsertSql(Connection conn) throws SQLException {
+        Dialect dialect = Dialect.of(conn);
+        // built outside the cache so an unsupported database fails with a SQLException
+        String sql = dialect.upsertSql(metadata.getTableName(), columnNames(metadata.getColumns()),
+                metadata.getPrimaryKey().getName());
+        return SqlCache.get(metadata.getType(), "upsert " + dialect, Collections.emptyList(), () -> sql);
+    }
+
+    private static String insertSql(String tableName, List<String> columnNames, int rowCount) {
+        String row = columnNames.stream().map(c -> "?").collect(Collectors.joining(", ", "(", ")"));
+        return "insert into " + tableName + " (" + String.join(", ", columnNames) + ") values " +
+                String.join(", ", Collections.nCopies(rowCount, row));
+    }
+
+    private static Object[] flatten(List<Object[]> rows, int from, int count) {
+        int width = rows.get(from).length;
+        Object[] values = new Object[width * count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(rows.get(from + i), 0, values, i * width, width);
+        }
+        return values;
+    }
+
+    /**
+     * @return indexes of the non-key columns changed since the entity was loaded or written,
+     * all of them for an untracked entity
+     */
+    private BitSet changedColumns(Object entity) {
+        Object[] snapshot = EntitySnapshots.get(entity);
+        BitSet changed = new BitSet();
+        for (ColumnMetadata column : metadata.getNonKeyColumns()) {
+            if (snapshot == null || EntitySnapshots.changed(column.get(entity), snapshot[column.getIndex()])) {
+                changed.set(column.getIndex());
+            }
+        }
+        return changed;
+    }
+
+    private List<ColumnMetadata> columnsOf(BitSet columnIndexes) {
+        return columnIndexes.stream().mapToObj(i -> metadata.getColumns().get(i)).collect(Collectors.toList());
+    }
+
+    private String updateSql(BitSet columnIndexes, List<ColumnMetadata> columns) {
+        return SqlCache.get(metadata.getType(), "update", columnIndexes, () ->
+                "update " + metadata.getTableName() + " set " +
+                columns.stream().map(c -> c.getName() + " = ?").collect(Collectors.joining(", ")) +
+                " where " + metadata.getPrimaryKey().getName() + " = ?");
+    }
+
+    /**
+     * Record the loaded column values of an entity for dirty checking in update, inside a
+     * session the instance already read for the row is returned instead
+     */
+    private Object track(Object entity) {
+        return IdentityMap.manage(metadata, entity);
+    }
+
+    /**
+     * @return the write queue of the session of the current thread, null outside a
+     * write-behind session
+     */
+    private static UnitOfWork unitOfWork() {
+        Session session = Session.current();
+        return session == null ? null : session.getUnitOfWork();
+    }
+
+    /**
+     * @return true to collapse concurrent identical lookups, only outside a transaction
+     * whose reads must see its own writes
+     */
+    private boolean coalescing() {
+        return requestCoalescing && Session.current() == null;
+    }
+
+    /**
+     * Copy an entity for another caller of a collapsed lookup, tracked like the original
+     */
+    private Object copy(Object entity) {
+        return copy(entity, Lazy.Batches.of(metadata));
+    }
+
+    private Object copy(Object entity, Lazy.Batches lazyBatches) {
+        Object copy = metadata.copy(entity, lazyBatches);
+        if (EntitySnapshots.get(entity) != null) {
+            EntitySnapshots.take(metadata, copy);
+        }
+        return copy;
+    }
+
+    private MultiGetResult copy(MultiGetResult result) {
+        Map<Object, Object> found = new LinkedHashMap<>();
+        Lazy.Batches lazyBatches = Lazy.Batches.of(metadata);
+        result.asMap().forEach((key, entity) -> found.put(key, copy(entity, lazyBatches)));
+        return new MultiGetResult(found, new ArrayList<>(result.getMissingIds()));
+    }
+
+    /**
+     * Snapshot a written entity for dirty checking and invalidate its row in the caches.
+     * The identity map of the session keeps the written instance, another instance of the
+     * same row makes the one in the map stale.
+     */
+    private void saved(Object entity) {
+        EntitySnapshots.take(metadata, entity);
+        written(entity);
+    }
+
+    /**
+     * Snapshot an updated entity, keeping the columns it was not read with unread, and
+     * invalidate its row like saved
+     */
+    private void updated(Object entity) {
+        EntitySnapshots.refresh(metadata, entity);
+        written(entity);
+    }
+
+    private void written(Object entity) {
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        if (pk == null) {
+            return;
+        }
+        IdentityMap map = IdentityMap.current();
+        if (map != null && !map.contains(metadata, entity)) {
+            map.evict(metadata, pk.get(entity));
+        }
+        invalidate(metadata.getTableName(), pk.get(entity));
+    }
+
+    /**
+     * Forget the entities of a table read in the session and cached after a write by
+     * column values
+     */
+    private static void evictTable(String tableName) {
+        IdentityMap map = IdentityMap.current();
+        if (map != null) {
+            map.evictTable(tableName);
+        }
+        invalidate(tableName, null);
+    }
+
+    /**
+     * Invalidate a written row in the entity cache and the results reading its table,
+     * and again when the transaction ends
+     *
+     * @param key primary key of the row, null when any row of the table may have changed
+     */
+    private static void invalidate(String tableName, Object key) {
+        EntityCache.invalidate(tableName, key);
+        ResultCache.invalidate(tableName);
+        Session session = Session.current();
+        if (session != null) {
+            session.written(tableName, key);
+        }
+    }
+
+    /**
+     * @return the entity cache of the orm class, null if it is not @Cacheable or the
+     * transaction of the current thread wrote its table
+     */
+    private EntityCache entityCache() {
+        EntityCache cache = EntityCache.forEntity(metadata);
+        Session session = Session.current();
+        return cache == null || session != null && session.hasWritten(metadata.getTableName()) ? null : cache;
+    }
+
+    private ColumnMetadata requirePrimaryKey() throws ArgumentFormatException {
+        if (metadata.getPrimaryKey() == null) {
+            throw new ArgumentFormatException(metadata.getType().getSimpleName() + " has no @PrimaryKey field");
+        }
+        return metadata.getPrimaryKey();
+    }
+
+    private boolean hasDefaultKey(Object pojo) {
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        return pk != null && pk.getType() == int.class && pk.getAccessor().getInt(pojo) == 0;
+    }
+
+    private static Object[] columnValues(Object pojo, List<ColumnMetadata> columns) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).get(pojo);
+        }
+        return values;
+    }
+
+    private static List<String> columnNames(List<ColumnMetadata> columns) {
+        return columns.stream().map(ColumnMetadata::getName).collect(Collectors.toList());
+    }
+
 }
@@ -0,0 +1,111 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * An aggregate function computed by the database for a Query: count, sum, avg, min, max.
+ * Results are typed: count is a Long, avg a Double, sum a Long for integer columns and a
+ * Double (BigDecimal for BigDecimal columns) otherwise, min and max have the column type.
+ */
+public final class Aggregate {
+    private final String function;
+    private final String column;
+
+    private Aggregate(String function, String column) {
+        this.function = function;
+        this.column = column;
+    }
+
+    /**
+     * @return count(*), the number of rows
+     */
+    public static Aggregate count() {
+        return new Aggregate("count", null);
+    }
+
+    /**
+     * @return the number of non null values of a column
+     */
+    public static Aggregate count(String column) {
+        return new Aggregate("count", column);
+    }
+
+    public static Aggregate sum(String column) {
+        return new Aggregate("sum", column);
+    }
+
+    public static Aggregate avg(String column) {
+        return new Aggregate("avg", column);
+    }
+
+    public static Aggregate min(String column) {
+        return new Aggregate("min", column);
+    }
+
+    public static Aggregate max(String column) {
+        return new Aggregate("max", column);
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * @return the aggregated column, null for count(*)
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    String toSql() {
+        return function + "(" + (column == null ? "*" : column) + ")";
+    }
+
+    void checkColumn(EntityMetadata metadata) throws ArgumentFormatException {
+        if (column != null) {
+            Criterion.checkColumn(metadata, column);
+        }
+    }
+
+    /**
+     * @return the Java type the aggregate of the entity column is read as
+     */
+    Class<?> resultType(EntityMetadata metadata) {
+        if (function.equals("count")) {
+            return Long.class;
+        }
+        if (function.equals("avg")) {
+            return Double.class;
+        }
+        Class<?> type = metadata.getColumn(column).getType();
+        if (function.equals("sum")) {
+            if (type == int.class || type == long.class || type == short.class || type == byte.class ||
+                    type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+                return Long.class;
+            }
+            return type == BigDecimal.class ? BigDecimal.class : Double.class;
+        }
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Aggregate)) return false;
+        Aggregate that = (Aggregate) o;
+        return function.equals(that.function) && Objects.equals(column, that.column);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(function, column);
+    }
+
+    @Override
+    public String toString() {
+        return toSql();
+    }
+}
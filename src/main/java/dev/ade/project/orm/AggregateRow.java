@@ -0,0 +1,66 @@
+package dev.ade.project.orm;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One row of an aggregate query: the values of the group by columns and of the aggregates
+ */
+public final class AggregateRow {
+    private final Map<String, Object> groups;
+    private final List<Aggregate> aggregates;
+    private final Object[] values;
+
+    AggregateRow(Map<String, Object> groups, List<Aggregate> aggregates, Object[] values) {
+        this.groups = Collections.unmodifiableMap(groups);
+        this.aggregates = aggregates;
+        this.values = values;
+    }
+
+    /**
+     * @return group by column names mapped to their values, in group by order
+     */
+    public Map<String, Object> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @param column a group by column
+     * @return the value of the column for this group
+     */
+    public Object get(String column) {
+        return groups.get(column);
+    }
+
+    /**
+     * @param aggregate one of the aggregates of the query
+     * @return its value for this group, null when the database returned null
+     */
+    public Object get(Aggregate aggregate) {
+        int index = aggregates.indexOf(aggregate);
+        if (index < 0) {
+            throw new IllegalArgumentException(aggregate + " is not an aggregate of the query");
+        }
+        return values[index];
+    }
+
+    public long getLong(Aggregate aggregate) {
+        Object value = get(aggregate);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    public double getDouble(Aggregate aggregate) {
+        Object value = get(aggregate);
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AggregateRow{").append(groups);
+        for (int i = 0; i < values.length; i++) {
+            sb.append(", ").append(aggregates.get(i)).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
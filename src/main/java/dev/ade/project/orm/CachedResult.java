@@ -0,0 +1,293 @@
+package dev.ade.project.orm;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rows of a ResultSet copied into memory, replayed by a read-only forward-only
+ * ResultSet so the usual decoders run unchanged on a cached result. Only the
+ * ResultSet methods used by the decoders are supported: next, the typed getters by
+ * index or label, wasNull, findColumn, getMetaData and close.
+ */
+final class CachedResult {
+    // rough per-object overhead of a boxed cell, used in the memory estimate
+    private static final int CELL_BYTES = 16;
+
+    private final String[] labels;
+    private final String[] tables;
+    private final int[] types;
+    private final List<Object[]> rows;
+    private final long bytes;
+
+    private CachedResult(String[] labels, String[] tables, int[] types, List<Object[]> rows, long bytes) {
+        this.labels = labels;
+        this.tables = tables;
+        this.types = types;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Read the remaining rows of a ResultSet
+     */
+    static CachedResult of(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int count = rsmd.getColumnCount();
+        String[] labels = new String[count];
+        String[] tables = new String[count];
+        int[] types = new int[count];
+        long bytes = 64;
+        for (int c = 0; c < count; c++) {
+            labels[c] = rsmd.getColumnLabel(c + 1);
+            tables[c] = rsmd.getTableName(c + 1);
+            types[c] = rsmd.getColumnType(c + 1);
+            bytes += 2L * labels[c].length() + 40;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        while (rs.next()) {
+            Object[] row = new Object[count];
+            for (int c = 0; c < count; c++) {
+                row[c] = rs.getObject(c + 1);
+                bytes += estimate(row[c]);
+            }
+            rows.add(row);
+            bytes += 16 + 8L * count;
+        }
+        return new CachedResult(labels, tables, types, rows, bytes);
+    }
+
+    /**
+     * @return estimated heap size of the copied rows
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * @return a new ResultSet positioned before the first row
+     */
+    ResultSet open() {
+        Replay replay = new Replay();
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> replay.invoke(proxy, method, args));
+    }
+
+    private static long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return CELL_BYTES + ((byte[]) value).length;
+        }
+        if (value instanceof BigDecimal) {
+            return 64;
+        }
+        return CELL_BYTES + 8;
+    }
+
+    private ResultSetMetaData metaData() {
+        return (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return labels.length;
+                        case "getColumnLabel":
+                        case "getColumnName":
+                            return labels[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return types[(Integer) args[0] - 1];
+                        case "getTableName":
+                            return tables[(Integer) args[0] - 1];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "CachedResult.MetaData";
+                        default:
+                            throw new SQLFeatureNotSupportedException(method.getName() + " of a cached result");
+                    }
+                });
+    }
+
+    /**
+     * Cursor over the rows
+     */
+    private final class Replay {
+        private int row = -1;
+        private boolean wasNull;
+        private boolean closed;
+
+        private Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    checkOpen();
+                    if (row < rows.size()) {
+                        row++;
+                    }
+                    return row < rows.size();
+                case "wasNull":
+                    return wasNull;
+                case "findColumn":
+                    return findColumn((String) args[0]);
+                case "getMetaData":
+                    return metaData();
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "CachedResult[" + rows.size() + " rows]";
+                default:
+                    if (name.startsWith("get") && args != null && args.length >= 1) {
+                        return get(method, args);
+                    }
+                    throw new SQLFeatureNotSupportedException(name + " of a cached result");
+            }
+        }
+
+        private Object get(Method method, Object[] args) throws SQLException {
+            checkOpen();
+            if (row < 0 || row >= rows.size()) {
+                throw new SQLException("No current row");
+            }
+            int index = args[0] instanceof Integer ? (Integer) args[0] : findColumn((String) args[0]);
+            if (index < 1 || index > labels.length) {
+                throw new SQLException("Column index " + index + " out of range");
+            }
+            Object value = rows.get(row)[index - 1];
+            wasNull = value == null;
+            // callers must not share the mutable cells of the cached copy
+            if (value instanceof java.util.Date) {
+                value = ((java.util.Date) value).clone();
+            } else if (value instanceof byte[]) {
+                value = ((byte[]) value).clone();
+            }
+            Class<?> target = method.getName().equals("getObject") ?
+                    (args.length > 1 && args[1] instanceof Class ? (Class<?>) args[1] : Object.class) :
+                    method.getReturnType();
+            return convert(value, target);
+        }
+
+        private int findColumn(String label) throws SQLException {
+            for (int c = 0; c < labels.length; c++) {
+                if (labels[c].equalsIgnoreCase(label)) {
+                    return c + 1;
+                }
+            }
+            throw new SQLException("Column " + label + " not found");
+        }
+
+        private void checkOpen() throws SQLException {
+            if (closed) {
+                throw new SQLException("Result is closed");
+            }
+        }
+    }
+
+    /**
+     * Convert a cell to the type of a ResultSet getter, as the driver would
+     */
+    private static Object convert(Object value, Class<?> target) throws SQLException {
+        if (target == Object.class || value != null && target.isInstance(value)) {
+            return value;
+        }
+        if (value == null) {
+            return target.isPrimitive() ? primitiveDefault(target) : null;
+        }
+        if (target == String.class) {
+            return value.toString();
+        }
+        if (target == int.class || target == Integer.class) {
+            return number(value).intValue();
+        }
+        if (target == long.class || target == Long.class) {
+            return number(value).longValue();
+        }
+        if (target == double.class || target == Double.class) {
+            return number(value).doubleValue();
+        }
+        if (target == float.class || target == Float.class) {
+            return number(value).floatValue();
+        }
+        if (target == short.class || target == Short.class) {
+            return number(value).shortValue();
+        }
+        if (target == byte.class || target == Byte.class) {
+            return number(value).byteValue();
+        }
+        if (target == boolean.class || target == Boolean.class) {
+            return value instanceof Number ? ((Number) value).intValue() != 0 : Boolean.parseBoolean(value.toString());
+        }
+        if (target == BigDecimal.class) {
+            return new BigDecimal(value.toString());
+        }
+        if (target == Timestamp.class) {
+            if (value instanceof LocalDateTime) {
+                return Timestamp.valueOf((LocalDateTime) value);
+            }
+            if (value instanceof java.util.Date) {
+                return new Timestamp(((java.util.Date) value).getTime());
+            }
+        }
+        if (target == Date.class) {
+            if (value instanceof LocalDate) {
+                return Date.valueOf((LocalDate) value);
+            }
+            if (value instanceof java.util.Date) {
+                return new Date(((java.util.Date) value).getTime());
+            }
+        }
+        if (target == Time.class && value instanceof java.util.Date) {
+            return new Time(((java.util.Date) value).getTime());
+        }
+        if (target == LocalDateTime.class && value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (target == LocalDate.class && value instanceof Date) {
+            return ((Date) value).toLocalDate();
+        }
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + target.getName());
+    }
+
+    private static Number number(Object value) throws SQLException {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Not a number: " + value, e);
+        }
+    }
+
+    private static Object primitiveDefault(Class<?> type) {
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+}
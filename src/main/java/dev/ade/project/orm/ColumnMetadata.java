@@ -0,0 +1,152 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.ForeignKey;
+import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.Unique;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Immutable description of one @ColumnName field of a POJO class,
+ * with its getter and setter bound once into a PropertyAccessor.
+ */
+public final class ColumnMetadata {
+    private final Field field;
+    private final String name;
+    private final int index;
+    private final boolean primaryKey;
+    private final boolean unique;
+    private final String foreignTable;
+    private final String foreignColumn;
+    private final Method getter;
+    private final Method setter;
+    private final PropertyAccessor accessor;
+
+    ColumnMetadata(Field field, int index) {
+        this.field = field;
+        this.index = index;
+        this.name = field.getDeclaredAnnotation(ColumnName.class).columnName();
+        this.primaryKey = field.isAnnotationPresent(PrimaryKey.class);
+        this.unique = primaryKey || field.isAnnotationPresent(Unique.class);
+        ForeignKey fk = field.getDeclaredAnnotation(ForeignKey.class);
+        this.foreignTable = fk == null ? null : fk.tableName();
+        this.foreignColumn = fk == null ? null : fk.columnName();
+        this.getter = findMethod(field.getDeclaringClass(), getterName(field));
+        this.setter = findMethod(field.getDeclaringClass(), setterName(field), field.getType());
+        this.accessor = PropertyAccessor.of(field, getter, setter);
+    }
+
+    /**
+     * @return column name from the @ColumnName annotation
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return position of the column among the columns of its entity
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    public boolean isPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * @return true for the primary key and @Unique columns
+     */
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public boolean isForeignKey() {
+        return foreignTable != null;
+    }
+
+    public String getForeignTable() {
+        return foreignTable;
+    }
+
+    public String getForeignColumn() {
+        return foreignColumn;
+    }
+
+    public Method getGetter() {
+        return getter;
+    }
+
+    public Method getSetter() {
+        return setter;
+    }
+
+    /**
+     * @return the accessor reading and writing the field, with unboxed primitive paths
+     */
+    public PropertyAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * Read the column value of an entity
+     *
+     * @param entity entity to read
+     * @return the field value
+     */
+    public Object get(Object entity) {
+        return accessor.get(entity);
+    }
+
+    /**
+     * Write the column value of an entity
+     *
+     * @param entity entity to write
+     * @param value field value, already converted to the field type
+     */
+    public void set(Object entity, Object value) {
+        accessor.set(entity, value);
+    }
+
+    static String getterName(Field field) {
+        String prefix = field.getType() == boolean.class ? "is" : "get";
+        return prefix + capitalize(field.getName());
+    }
+
+    static String setterName(Field field) {
+        return "set" + capitalize(field.getName());
+    }
+
+    private static String capitalize(String name) {
+        return name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+
+    private static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnMetadata{" +
+                "name='" + name + '\'' +
+                ", field=" + field.getName() +
+                ", primaryKey=" + primaryKey +
+                ", unique=" + unique +
+                (foreignTable == null ? "" : ", foreignKey=" + foreignTable + "." + foreignColumn) +
+                '}';
+    }
+}
@@ -0,0 +1,383 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A predicate of a Query: comparisons, IN, LIKE, IS NULL and nested and/or/not groups.
+ * Values are always sent as statement parameters. Two criteria of the same shape (same
+ * columns, operators and nesting, whatever their values) are equal and have equal
+ * value-free shape keys, which lets a query shape be compiled into SQL once.
+ */
+public abstract class Criterion {
+
+    Criterion() {}
+
+    public static Criterion eq(String column, Object value) {
+        return value == null ? isNull(column) : new Comparison(column, "=", value);
+    }
+
+    public static Criterion ne(String column, Object value) {
+        return value == null ? isNotNull(column) : new Comparison(column, "<>", value);
+    }
+
+    public static Criterion lt(String column, Object value) {
+        return new Comparison(column, "<", value);
+    }
+
+    public static Criterion le(String column, Object value) {
+        return new Comparison(column, "<=", value);
+    }
+
+    public static Criterion gt(String column, Object value) {
+        return new Comparison(column, ">", value);
+    }
+
+    public static Criterion ge(String column, Object value) {
+        return new Comparison(column, ">=", value);
+    }
+
+    /**
+     * @param pattern LIKE pattern, with % and _ wildcards
+     */
+    public static Criterion like(String column, String pattern) {
+        return new Comparison(column, "like", pattern);
+    }
+
+    /**
+     * The value list is padded to a power of two with its last value, so lists of
+     * similar sizes share the same statement.
+     */
+    public static Criterion in(String column, Collection<?> values) {
+        return new In(column, new ArrayList<>(values));
+    }
+
+    public static Criterion in(String column, Object... values) {
+        return in(column, Arrays.asList(values));
+    }
+
+    public static Criterion isNull(String column) {
+        return new NullCheck(column, false);
+    }
+
+    public static Criterion isNotNull(String column) {
+        return new NullCheck(column, true);
+    }
+
+    public static Criterion allOf(Criterion... criteria) {
+        return new Group("and", Arrays.asList(criteria));
+    }
+
+    public static Criterion anyOf(Criterion... criteria) {
+        return new Group("or", Arrays.asList(criteria));
+    }
+
+    public static Criterion not(Criterion criterion) {
+        return new Not(criterion);
+    }
+
+    public Criterion and(Criterion other) {
+        return Group.join("and", this, other);
+    }
+
+    public Criterion or(Criterion other) {
+        return Group.join("or", this, other);
+    }
+
+    /**
+     * Append the SQL of the predicate, with a ? per value
+     *
+     * @param qualifier prefix of the column names, e.g. "t.", or an empty string
+     */
+    abstract void appendSql(StringBuilder sql, String qualifier);
+
+    /**
+     * Add the values in the order of their placeholders
+     */
+    abstract void collectValues(List<Object> values);
+
+    /**
+     * Reject column names that are not columns of the entity
+     */
+    abstract void checkColumns(EntityMetadata metadata) throws ArgumentFormatException;
+
+    /**
+     * @return a key of the shape of the predicate holding no value, to cache its SQL by
+     */
+    abstract Object shape();
+
+    /**
+     * @return the shape of a criterion, null for no criterion
+     */
+    static Object shapeOf(Criterion criterion) {
+        return criterion == null ? null : criterion.shape();
+    }
+
+    static void checkColumn(EntityMetadata metadata, String column) throws ArgumentFormatException {
+        if (column == null || metadata.getColumn(column) == null) {
+            throw new ArgumentFormatException(column + " is not a column of " + metadata.getTableName());
+        }
+    }
+
+    private static final class Comparison extends Criterion {
+        private final String column;
+        private final String operator;
+        private final Object value;
+
+        private Comparison(String column, String operator, Object value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, String qualifier) {
+            sql.append(qualifier).append(column).append(' ').append(operator).append(" ?");
+        }
+
+        @Override
+        void collectValues(List<Object> values) {
+            values.add(value);
+        }
+
+        @Override
+        Object shape() {
+            return Arrays.asList("compare", column, operator);
+        }
+
+        @Override
+        void checkColumns(EntityMetadata metadata) throws ArgumentFormatException {
+            checkColumn(metadata, column);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Comparison)) return false;
+            Comparison that = (Comparison) o;
+            return column.equals(that.column) && operator.equals(that.operator);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(column, operator);
+        }
+    }
+
+    private static final class In extends Criterion {
+        private final String column;
+        private final List<Object> values;
+        private final int size;
+
+        private In(String column, List<Object> values) {
+            this.column = column;
+            this.values = values;
+            this.size = values.size() < 2 ? values.size() : Integer.highestOneBit(values.size() - 1) << 1;
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, String qualifier) {
+            if (size == 0) {
+                sql.append("1 = 0");
+                return;
+            }
+            sql.append(qualifier).append(column).append(" in (")
+                    .append(String.join(", ", Collections.nCopies(size, "?"))).append(')');
+        }
+
+        @Override
+        void collectValues(List<Object> values) {
+            values.addAll(this.values);
+            for (int i = this.values.size(); i < size; i++) {
+                values.add(this.values.get(this.values.size() - 1));
+            }
+        }
+
+        @Override
+        Object shape() {
+            return Arrays.asList("in", column, size);
+        }
+
+        @Override
+        void checkColumns(EntityMetadata metadata) throws ArgumentFormatException {
+            checkColumn(metadata, column);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof In)) return false;
+            In that = (In) o;
+            return column.equals(that.column) && size == that.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(column, size);
+        }
+    }
+
+    private static final class NullCheck extends Criterion {
+        private final String column;
+        private final boolean negated;
+
+        private NullCheck(String column, boolean negated) {
+            this.column = column;
+            this.negated = negated;
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, String qualifier) {
+            sql.append(qualifier).append(column).append(negated ? " is not null" : " is null");
+        }
+
+        @Override
+        void collectValues(List<Object> values) {
+        }
+
+        @Override
+        Object shape() {
+            return Arrays.asList("null", column, negated);
+        }
+
+        @Override
+        void checkColumns(EntityMetadata metadata) throws ArgumentFormatException {
+            checkColumn(metadata, column);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NullCheck)) return false;
+            NullCheck that = (NullCheck) o;
+            return column.equals(that.column) && negated == that.negated;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(column, negated);
+        }
+    }
+
+    private static final class Group extends Criterion {
+        private final String joiner;
+        private final List<Criterion> children;
+
+        private Group(String joiner, List<Criterion> children) {
+            if (children.isEmpty()) {
+                throw new IllegalArgumentException("A criteria group needs at least one criterion");
+            }
+            this.joiner = joiner;
+            this.children = Collections.unmodifiableList(new ArrayList<>(children));
+        }
+
+        /**
+         * Join two criteria, extending a group with the same joiner instead of nesting it
+         */
+        private static Group join(String joiner, Criterion left, Criterion right) {
+            List<Criterion> children = new ArrayList<>();
+            if (left instanceof Group && ((Group) left).joiner.equals(joiner)) {
+                children.addAll(((Group) left).children);
+            } else {
+                children.add(left);
+            }
+            children.add(right);
+            return new Group(joiner, children);
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, String qualifier) {
+            sql.append('(');
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    sql.append(' ').append(joiner).append(' ');
+                }
+                children.get(i).appendSql(sql, qualifier);
+            }
+            sql.append(')');
+        }
+
+        @Override
+        void collectValues(List<Object> values) {
+            for (Criterion child : children) {
+                child.collectValues(values);
+            }
+        }
+
+        @Override
+        Object shape() {
+            List<Object> shape = new ArrayList<>(children.size() + 1);
+            shape.add(joiner);
+            for (Criterion child : children) {
+                shape.add(child.shape());
+            }
+            return shape;
+        }
+
+        @Override
+        void checkColumns(EntityMetadata metadata) throws ArgumentFormatException {
+            for (Criterion child : children) {
+                child.checkColumns(metadata);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Group)) return false;
+            Group that = (Group) o;
+            return joiner.equals(that.joiner) && children.equals(that.children);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(joiner, children);
+        }
+    }
+
+    private static final class Not extends Criterion {
+        private final Criterion criterion;
+
+        private Not(Criterion criterion) {
+            this.criterion = Objects.requireNonNull(criterion);
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, String qualifier) {
+            sql.append("not (");
+            criterion.appendSql(sql, qualifier);
+            sql.append(')');
+        }
+
+        @Override
+        void collectValues(List<Object> values) {
+            criterion.collectValues(values);
+        }
+
+        @Override
+        Object shape() {
+            return Arrays.asList("not", criterion.shape());
+        }
+
+        @Override
+        void checkColumns(EntityMetadata metadata) throws ArgumentFormatException {
+            criterion.checkColumns(metadata);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Not && criterion.equals(((Not) o).criterion);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * criterion.hashCode() + 1;
+        }
+    }
+}
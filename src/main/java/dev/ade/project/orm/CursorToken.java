@@ -0,0 +1,156 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Base64;
+
+/**
+ * Encodes the key values of the last row of a page into an opaque, url safe token
+ * and back, keeping the value types so they can be bound again. Date and time values
+ * are kept as instants, enums by name.
+ */
+final class CursorToken {
+
+    private CursorToken() {}
+
+    static String encode(Object... values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(values.length);
+            for (Object value : values) {
+                if (value == null) {
+                    out.writeByte('n');
+                } else if (value instanceof Integer) {
+                    out.writeByte('i');
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Long) {
+                    out.writeByte('l');
+                    out.writeLong((Long) value);
+                } else if (value instanceof Short) {
+                    out.writeByte('h');
+                    out.writeShort((Short) value);
+                } else if (value instanceof Byte) {
+                    out.writeByte('y');
+                    out.writeByte((Byte) value);
+                } else if (value instanceof Double) {
+                    out.writeByte('d');
+                    out.writeDouble((Double) value);
+                } else if (value instanceof Float) {
+                    out.writeByte('f');
+                    out.writeFloat((Float) value);
+                } else if (value instanceof Boolean) {
+                    out.writeByte('z');
+                    out.writeBoolean((Boolean) value);
+                } else if (value instanceof Character) {
+                    out.writeByte('c');
+                    out.writeChar((Character) value);
+                } else if (value instanceof BigDecimal) {
+                    out.writeByte('b');
+                    out.writeUTF(value.toString());
+                } else if (value instanceof LocalDate) {
+                    out.writeByte('D');
+                    out.writeUTF(value.toString());
+                } else if (value instanceof LocalDateTime) {
+                    out.writeByte('T');
+                    out.writeUTF(value.toString());
+                } else if (value instanceof LocalTime) {
+                    out.writeByte('L');
+                    out.writeUTF(value.toString());
+                } else if (value instanceof Timestamp) {
+                    out.writeByte('t');
+                    out.writeLong(((Timestamp) value).getTime());
+                    out.writeInt(((Timestamp) value).getNanos());
+                } else if (value instanceof Date) {
+                    out.writeByte('a');
+                    out.writeLong(((Date) value).getTime());
+                } else if (value instanceof Time) {
+                    out.writeByte('m');
+                    out.writeLong(((Time) value).getTime());
+                } else if (value instanceof java.util.Date) {
+                    out.writeByte('u');
+                    out.writeLong(((java.util.Date) value).getTime());
+                } else if (value instanceof Enum) {
+                    out.writeByte('e');
+                    out.writeUTF(((Enum<?>) value).name());
+                } else {
+                    out.writeByte('s');
+                    out.writeUTF(value.toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param types field types of the values, the token must hold one value of each
+     * @throws ArgumentFormatException if the token is malformed or its values do not have the types
+     */
+    static Object[] decode(String token, Class<?>... types) throws ArgumentFormatException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                Base64.getUrlDecoder().decode(token.getBytes(StandardCharsets.US_ASCII))))) {
+            Object[] values = new Object[in.readUnsignedByte()];
+            if (values.length != types.length) {
+                throw new ArgumentFormatException("Cursor does not match the page order");
+            }
+            for (int i = 0; i < values.length; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                    case 'n': values[i] = null; break;
+                    case 'i': values[i] = in.readInt(); break;
+                    case 'l': values[i] = in.readLong(); break;
+                    case 'h': values[i] = in.readShort(); break;
+                    case 'y': values[i] = in.readByte(); break;
+                    case 'd': values[i] = in.readDouble(); break;
+                    case 'f': values[i] = in.readFloat(); break;
+                    case 'z': values[i] = in.readBoolean(); break;
+                    case 'c': values[i] = in.readChar(); break;
+                    case 'b': values[i] = new BigDecimal(in.readUTF()); break;
+                    case 'D': values[i] = LocalDate.parse(in.readUTF()); break;
+                    case 'T': values[i] = LocalDateTime.parse(in.readUTF()); break;
+                    case 'L': values[i] = LocalTime.parse(in.readUTF()); break;
+                    case 't':
+                        Timestamp timestamp = new Timestamp(in.readLong());
+                        timestamp.setNanos(in.readInt());
+                        values[i] = timestamp;
+                        break;
+                    case 'a': values[i] = new Date(in.readLong()); break;
+                    case 'm': values[i] = new Time(in.readLong()); break;
+                    case 'u': values[i] = new java.util.Date(in.readLong()); break;
+                    case 'e': values[i] = toEnum(types[i], in.readUTF()); break;
+                    case 's': values[i] = in.readUTF(); break;
+                    default: throw new ArgumentFormatException("Malformed cursor");
+                }
+                if (values[i] != null && !MethodType.methodType(types[i]).wrap().returnType().isInstance(values[i])) {
+                    throw new ArgumentFormatException("Cursor does not match the page order");
+                }
+            }
+            return values;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ArgumentFormatException("Malformed cursor", e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object toEnum(Class<?> type, String name) throws ArgumentFormatException {
+        if (!type.isEnum()) {
+            throw new ArgumentFormatException("Cursor does not match the page order");
+        }
+        return Enum.valueOf((Class<? extends Enum>) type, name);
+    }
+}
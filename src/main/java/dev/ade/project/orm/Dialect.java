@@ -0,0 +1,90 @@
+package dev.ade.project.orm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SQL differences between the databases the orm runs on:
+ * PostgreSQL in production and H2 for testing.
+ */
+public enum Dialect {
+    POSTGRESQL,
+    H2,
+    OTHER;
+
+    /**
+     * @param conn an open connection
+     * @return the dialect of the database behind the connection
+     */
+    public static Dialect of(Connection conn) throws SQLException {
+        String product = conn.getMetaData().getDatabaseProductName();
+        if ("PostgreSQL".equalsIgnoreCase(product)) {
+            return POSTGRESQL;
+        }
+        if ("H2".equalsIgnoreCase(product)) {
+            return H2;
+        }
+        return OTHER;
+    }
+
+    /**
+     * @return true if a whole array can be bound to one parameter, as in "pk = any(?)"
+     */
+    public boolean supportsArrayParameters() {
+        return this == POSTGRESQL;
+    }
+
+    /**
+     * @param type java type of the array elements
+     * @return SQL type name to pass to Connection.createArrayOf
+     */
+    public String arrayTypeName(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return "integer";
+        }
+        if (type == long.class || type == Long.class) {
+            return "bigint";
+        }
+        if (type == short.class || type == Short.class) {
+            return "smallint";
+        }
+        if (type == double.class || type == Double.class) {
+            return "float8";
+        }
+        if (type == java.math.BigDecimal.class) {
+            return "numeric";
+        }
+        return "varchar";
+    }
+
+    /**
+     * Single statement insert-or-update of a row by primary key,
+     * "insert ... on conflict (pk) do update" on PostgreSQL, "merge ... key (pk)" on H2
+     *
+     * @param tableName table to write
+     * @param columnNames all columns of the row, primary key included
+     * @param pkName primary key column
+     * @return parameterized SQL taking the column values in order
+     * @throws SQLFeatureNotSupportedException on other databases
+     */
+    public String upsertSql(String tableName, List<String> columnNames, String pkName)
+            throws SQLFeatureNotSupportedException {
+        String columns = String.join(", ", columnNames);
+        String values = columnNames.stream().map(c -> "?").collect(Collectors.joining(", ", "(", ")"));
+        switch (this) {
+            case POSTGRESQL:
+                List<String> updates = columnNames.stream().filter(c -> !c.equals(pkName))
+                        .map(c -> c + " = excluded." + c).collect(Collectors.toList());
+                return "insert into " + tableName + " (" + columns + ") values " + values +
+                        " on conflict (" + pkName + ") do " +
+                        (updates.isEmpty() ? "nothing" : "update set " + String.join(", ", updates));
+            case H2:
+                return "merge into " + tableName + " (" + columns + ") key (" + pkName + ") values " + values;
+            default:
+                throw new SQLFeatureNotSupportedException("Upsert is not supported on this database");
+        }
+    }
+}
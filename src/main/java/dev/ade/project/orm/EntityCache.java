@@ -0,0 +1,281 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.Cacheable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of the rows of a @Cacheable class by primary key, shared by all
+ * threads and AdeOrm instances. The column values of a row are cached, not the entity:
+ * each hit returns a new instance, so callers never share mutable objects.
+ * Entries are evicted least recently used first beyond maxEntries and expire ttlSeconds
+ * after they were read. Writes through AdeOrm invalidate the rows they touch, again when
+ * their transaction commits or rolls back, and a read started before an invalidation
+ * does not put its row back.
+ * With offHeapBytes set, rows are serialized into off-heap slabs instead of being kept
+ * as objects, so a large cache adds little to garbage collection; see OffHeapRowStore.
+ */
+public final class EntityCache {
+    private static final ConcurrentMap<Class<?>, EntityCache> REGISTRY = new ConcurrentHashMap<>();
+    private static final EntityCache NONE = new EntityCache(null, 0, 0, 0);
+
+    private final EntityMetadata metadata;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Object, CachedRow> entries;
+    private final OffHeapRowStore offHeap;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long invalidations;
+
+    private static final class CachedRow {
+        private final Object[] values;
+        private final long expiresAt;
+
+        private CachedRow(Object[] values, long expiresAt) {
+            this.values = values;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private EntityCache(EntityMetadata metadata, int maxEntries, long ttlNanos, long offHeapBytes) {
+        this.metadata = metadata;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttlNanos;
+        this.offHeap = offHeapBytes > 0 ? new OffHeapRowStore(columnTypes(metadata), offHeapBytes,
+                OffHeapRowStore.SLAB_BYTES) : null;
+        this.entries = new LinkedHashMap<Object, CachedRow>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CachedRow> eldest) {
+                if (size() > EntityCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param clazz a POJO class
+     * @return the cache of the class, null if the class is not @Cacheable
+     */
+    public static EntityCache of(Class<?> clazz) {
+        return forEntity(EntityMetadata.of(clazz));
+    }
+
+    static EntityCache forEntity(EntityMetadata metadata) {
+        EntityCache cache = REGISTRY.computeIfAbsent(metadata.getType(), type -> {
+            Cacheable cacheable = type.getDeclaredAnnotation(Cacheable.class);
+            if (cacheable == null || metadata.getPrimaryKey() == null || metadata.getTableName() == null) {
+                return NONE;
+            }
+            return new EntityCache(metadata, cacheable.maxEntries(),
+                    TimeUnit.SECONDS.toNanos(Math.max(0, cacheable.ttlSeconds())), cacheable.offHeapBytes());
+        });
+        return cache == NONE ? null : cache;
+    }
+
+    /**
+     * Invalidate cached rows of a table after a write
+     *
+     * @param tableName written table
+     * @param key primary key of the written row, null when any row may have changed
+     */
+    static void invalidate(String tableName, Object key) {
+        for (EntityCache cache : REGISTRY.values()) {
+            if (cache != NONE && cache.metadata.getTableName().equalsIgnoreCase(tableName)) {
+                if (key == null) {
+                    cache.clear();
+                } else {
+                    cache.invalidate(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Empty every entity cache, e.g. after the tables were changed outside AdeOrm
+     */
+    public static void clearAll() {
+        for (EntityCache cache : REGISTRY.values()) {
+            if (cache != NONE) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * @param key primary key value
+     * @param lazyBatches batches shared by the entities loaded together, see Lazy.Batches.of
+     * @return a new entity holding the cached row, null on a miss
+     */
+    Object load(Object key, Lazy.Batches lazyBatches) {
+        Object[] values;
+        synchronized (this) {
+            values = offHeap != null ? offHeap.get(key) : values(key);
+        }
+        if (values == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        Object entity;
+        try {
+            entity = metadata.newInstance(values, lazyBatches);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot instantiate " + metadata.getType().getName(), e);
+        }
+        return entity;
+    }
+
+    /**
+     * Read some columns of a cached row without creating an entity; off heap only
+     * these columns are decoded
+     *
+     * @param key primary key value
+     * @param columnNames column names from the @ColumnName annotations
+     * @return the column values, null on a miss
+     */
+    public List<Object> getColumns(Object key, String... columnNames) {
+        int[] indexes = new int[columnNames.length];
+        for (int i = 0; i < indexes.length; i++) {
+            ColumnMetadata column = metadata.getColumn(columnNames[i]);
+            if (column == null) {
+                throw new IllegalArgumentException("No column " + columnNames[i] + " in " +
+                        metadata.getType().getName());
+            }
+            indexes[i] = column.getIndex();
+        }
+        Object[] values;
+        synchronized (this) {
+            if (offHeap != null) {
+                values = offHeap.getColumns(key, indexes);
+            } else {
+                Object[] row = values(key);
+                values = row == null ? null : new Object[indexes.length];
+                for (int i = 0; row != null && i < indexes.length; i++) {
+                    values[i] = row[indexes[i]];
+                }
+            }
+        }
+        if (values == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    /**
+     * @return the values of an on-heap entry, null if missing or expired
+     */
+    private Object[] values(Object key) {
+        CachedRow entry = entries.get(key);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        return entry == null ? null : entry.values;
+    }
+
+    /**
+     * @return a stamp to take before reading rows from the database, see put
+     */
+    synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Cache a row read from the database, unless the cache was invalidated since the read started
+     *
+     * @param entity entity holding every column of the row
+     * @param stamp stamp taken before the read
+     */
+    void put(Object entity, long stamp) {
+        Object[] values = metadata.valuesOf(entity);
+        Object key = metadata.getPrimaryKey().get(entity);
+        synchronized (this) {
+            if (stamp == invalidations && key != null) {
+                if (offHeap != null) {
+                    offHeap.put(key, values, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+                } else {
+                    entries.put(key, new CachedRow(values, System.nanoTime() + ttlNanos));
+                }
+            }
+        }
+    }
+
+    synchronized void invalidate(Object key) {
+        invalidations++;
+        entries.remove(key);
+        if (offHeap != null) {
+            offHeap.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations++;
+        entries.clear();
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return offHeap != null ? offHeap.size() : entries.size();
+    }
+
+    /**
+     * @return off-heap bytes allocated for the rows, 0 when they are kept on heap
+     */
+    public synchronized long getOffHeapBytes() {
+        return offHeap != null ? offHeap.getAllocatedBytes() : 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries removed because the cache was full or they expired
+     */
+    public long getEvictions() {
+        return evictions.get() + (offHeap != null ? offHeap.getEvictions() : 0);
+    }
+
+    private static Class<?>[] columnTypes(EntityMetadata metadata) {
+        List<ColumnMetadata> columns = metadata.getColumns();
+        Class<?>[] types = new Class<?>[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = columns.get(i).getType();
+        }
+        return types;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{" +
+                "type=" + metadata.getType().getName() +
+                ", size=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,239 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.Reference;
+import dev.ade.project.annotations.TableName;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable mapping information of a POJO class: table name, columns in
+ * declaration order, primary key, unique and foreign key columns, and
+ * the @Reference fields holding referenced entities.
+ * Computed once per class and kept in a registry shared by all AdeOrm instances.
+ */
+public final class EntityMetadata {
+    private static final ConcurrentMap<Class<?>, EntityMetadata> REGISTRY = new ConcurrentHashMap<>();
+
+    private final Class<?> type;
+    private final String tableName;
+    private final Constructor<?> constructor;
+    private final List<ColumnMetadata> columns;
+    private final List<ColumnMetadata> nonKeyColumns;
+    private final Map<String, ColumnMetadata> columnsByName;
+    private final ColumnMetadata primaryKey;
+    private final List<ColumnMetadata> uniqueColumns;
+    private final List<ColumnMetadata> foreignKeys;
+    private final Map<String, ReferenceMetadata> references;
+
+    private EntityMetadata(Class<?> type) {
+        this.type = type;
+        TableName table = type.getDeclaredAnnotation(TableName.class);
+        this.tableName = table == null ? null : table.tableName();
+        this.constructor = findConstructor(type);
+
+        List<ColumnMetadata> columns = new ArrayList<>();
+        Map<String, ColumnMetadata> byName = new HashMap<>();
+        List<ColumnMetadata> unique = new ArrayList<>();
+        List<ColumnMetadata> foreign = new ArrayList<>();
+        ColumnMetadata pk = null;
+        for (Field field : type.getDeclaredFields()) {
+            if (!field.isAnnotationPresent(ColumnName.class) || Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            ColumnMetadata column = new ColumnMetadata(field, columns.size());
+            columns.add(column);
+            byName.put(column.getName(), column);
+            if (column.isPrimaryKey()) {
+                pk = column;
+            }
+            if (column.isUnique()) {
+                unique.add(column);
+            }
+            if (column.isForeignKey()) {
+                foreign.add(column);
+            }
+        }
+        this.columns = Collections.unmodifiableList(columns);
+        List<ColumnMetadata> nonKey = new ArrayList<>(columns);
+        nonKey.removeIf(ColumnMetadata::isPrimaryKey);
+        this.nonKeyColumns = Collections.unmodifiableList(nonKey);
+        this.columnsByName = Collections.unmodifiableMap(byName);
+        this.primaryKey = pk;
+        this.uniqueColumns = Collections.unmodifiableList(unique);
+        this.foreignKeys = Collections.unmodifiableList(foreign);
+
+        Map<String, ReferenceMetadata> references = new LinkedHashMap<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Reference.class)) {
+                references.put(field.getName(), ReferenceMetadata.of(field, this));
+            }
+        }
+        this.references = Collections.unmodifiableMap(references);
+    }
+
+    /**
+     * Get the metadata of a POJO class, computing it on first use
+     *
+     * @param clazz a POJO class
+     * @return metadata of the class
+     */
+    public static EntityMetadata of(Class<?> clazz) {
+        if (clazz == null) {
+            throw new IllegalArgumentException("POJO class is required");
+        }
+        return REGISTRY.computeIfAbsent(clazz, EntityMetadata::new);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return table name from the @TableName annotation, null if the class has none
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the @ColumnName columns in declaration order
+     */
+    public List<ColumnMetadata> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the columns except the primary key, in declaration order
+     */
+    public List<ColumnMetadata> getNonKeyColumns() {
+        return nonKeyColumns;
+    }
+
+    /**
+     * @param columnName column name
+     * @return the column, null if the class has no such column
+     */
+    public ColumnMetadata getColumn(String columnName) {
+        return columnsByName.get(columnName);
+    }
+
+    /**
+     * @return the @PrimaryKey column, null if the class has none
+     */
+    public ColumnMetadata getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public List<ColumnMetadata> getUniqueColumns() {
+        return uniqueColumns;
+    }
+
+    public List<ColumnMetadata> getForeignKeys() {
+        return foreignKeys;
+    }
+
+    /**
+     * @return the @Reference fields in declaration order
+     */
+    public Collection<ReferenceMetadata> getReferences() {
+        return references.values();
+    }
+
+    /**
+     * @param name name of a @Reference field
+     * @return the reference, null if the class has no such reference
+     */
+    public ReferenceMetadata getReference(String name) {
+        return references.get(name);
+    }
+
+    /**
+     * @param columnName column name
+     * @return true if the column is the primary key or a @Unique column
+     */
+    public boolean isUnique(String columnName) {
+        ColumnMetadata column = columnsByName.get(columnName);
+        return column != null && column.isUnique();
+    }
+
+    /**
+     * Create an empty instance through the no-argument constructor
+     *
+     * @return a new instance of the POJO class
+     */
+    public Object newInstance() throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        if (constructor == null) {
+            throw new InstantiationException(type.getName() + " has no no-argument constructor");
+        }
+        return constructor.newInstance();
+    }
+
+    /**
+     * Create an instance holding column values, lazy references get a pending holder
+     * of their foreign key
+     *
+     * @param values column values in column order
+     * @param lazyBatches batches shared by the entities created together, see Lazy.Batches.of
+     * @return a new instance of the POJO class
+     */
+    Object newInstance(Object[] values, Lazy.Batches lazyBatches) throws InstantiationException,
+            IllegalAccessException, InvocationTargetException {
+        Object entity = newInstance();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                columns.get(i).set(entity, values[i]);
+            }
+        }
+        lazyBatches.setPending(entity);
+        return entity;
+    }
+
+    /**
+     * @return the column values of an entity in column order
+     */
+    Object[] valuesOf(Object entity) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).get(entity);
+        }
+        return values;
+    }
+
+    /**
+     * @param lazyBatches batches shared by the entities copied together
+     * @return a new instance holding the column values of an entity
+     */
+    Object copy(Object entity, Lazy.Batches lazyBatches) {
+        try {
+            return newInstance(valuesOf(entity), lazyBatches);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot instantiate " + type.getName(), e);
+        }
+    }
+
+    private static Constructor<?> findConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EntityMetadata{" +
+                "type=" + type.getName() +
+                ", tableName='" + tableName + '\'' +
+                ", columns=" + columns +
+                '}';
+    }
+}
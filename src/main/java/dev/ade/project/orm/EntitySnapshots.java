@@ -0,0 +1,128 @@
+package dev.ade.project.orm;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Column values of entities as they were loaded from or last written to the database,
+ * used to find the columns an update has to write. Entities are held by identity through
+ * weak references, a snapshot goes away with its entity. Mutable values (dates, arrays)
+ * are copied, so a change made in place to the entity's value is still seen.
+ * The snapshot of an entity read with only some columns marks the other columns unread,
+ * an update never writes them.
+ */
+final class EntitySnapshots {
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static final ConcurrentMap<IdentityKey, Object[]> SNAPSHOTS = new ConcurrentHashMap<>();
+    // snapshot value of a column that was not read
+    private static final Object UNREAD = new Object();
+
+    private EntitySnapshots() {}
+
+    /**
+     * Record the current column values of an entity
+     */
+    static void take(EntityMetadata metadata, Object entity) {
+        take(metadata, entity, metadata.getColumns());
+    }
+
+    /**
+     * Record the current values of the columns read into an entity, the others are unread
+     */
+    static void take(EntityMetadata metadata, Object entity, List<ColumnMetadata> read) {
+        expunge();
+        Object[] values = new Object[metadata.getColumns().size()];
+        Arrays.fill(values, UNREAD);
+        for (ColumnMetadata column : read) {
+            values[column.getIndex()] = copyOf(column.get(entity));
+        }
+        SNAPSHOTS.put(new IdentityKey(entity, QUEUE), values);
+    }
+
+    /**
+     * Record the current values of an entity after an update, its unread columns stay unread
+     */
+    static void refresh(EntityMetadata metadata, Object entity) {
+        Object[] snapshot = get(entity);
+        if (snapshot == null) {
+            take(metadata, entity);
+            return;
+        }
+        List<ColumnMetadata> read = new ArrayList<>(snapshot.length);
+        for (ColumnMetadata column : metadata.getColumns()) {
+            if (snapshot[column.getIndex()] != UNREAD) {
+                read.add(column);
+            }
+        }
+        take(metadata, entity, read);
+    }
+
+    /**
+     * @return true if a column value differs from its snapshot value, arrays are compared by
+     * content; an unread column is never changed
+     */
+    static boolean changed(Object value, Object snapshotValue) {
+        return snapshotValue != UNREAD && !Objects.deepEquals(value, snapshotValue);
+    }
+
+    private static Object copyOf(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * @return the recorded column values in column order, null if the entity is not tracked
+     */
+    static Object[] get(Object entity) {
+        return SNAPSHOTS.get(new IdentityKey(entity, null));
+    }
+
+    static void remove(Object entity) {
+        SNAPSHOTS.remove(new IdentityKey(entity, null));
+    }
+
+    private static void expunge() {
+        Object key;
+        while ((key = QUEUE.poll()) != null) {
+            SNAPSHOTS.remove(key);
+        }
+    }
+
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hash;
+
+        private IdentityKey(Object entity, ReferenceQueue<Object> queue) {
+            super(entity, queue);
+            this.hash = System.identityHashCode(entity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IdentityKey)) return false;
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) o).get();
+        }
+    }
+}
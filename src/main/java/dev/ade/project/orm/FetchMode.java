@@ -0,0 +1,15 @@
+package dev.ade.project.orm;
+
+/**
+ * How a Query loads a @Reference of the entities it returns
+ */
+public enum FetchMode {
+    /**
+     * Left join the referenced table in the query itself
+     */
+    JOIN,
+    /**
+     * Run the query, then load the distinct referenced keys with one IN/ANY query per batch
+     */
+    BATCH
+}
@@ -0,0 +1,144 @@
+package dev.ade.project.orm;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * First level cache of a Session: the entities read in the session by class and
+ * primary key, so that a row is one instance for the whole session and reading it
+ * again costs a hash lookup. Entities are also indexed by their @Unique columns,
+ * an index entry is only trusted while the entity still holds the indexed value.
+ * Only used by the thread of its session, so not synchronized.
+ */
+final class IdentityMap {
+    private final Map<Class<?>, Rows> rows = new HashMap<>();
+
+    private static final class Rows {
+        private final Map<Object, Object> byKey = new HashMap<>();
+        private final Map<String, Map<Object, Object>> byUnique = new HashMap<>();
+    }
+
+    /**
+     * @return the identity map of the session of the current thread, null outside a session
+     */
+    static IdentityMap current() {
+        Session session = Session.current();
+        return session == null ? null : session.getIdentityMap();
+    }
+
+    /**
+     * Make an entity just read the instance of its row: inside a session the instance
+     * already read for the row is returned instead, otherwise the entity is snapshotted
+     * for dirty checking and returned
+     *
+     * @param metadata metadata of the entity class
+     * @param entity a fully read entity
+     * @return the instance to hand out
+     */
+    static Object manage(EntityMetadata metadata, Object entity) {
+        IdentityMap map = current();
+        if (map != null) {
+            Object managed = map.register(metadata, entity);
+            if (managed != entity) {
+                return managed;
+            }
+        }
+        EntitySnapshots.take(metadata, entity);
+        return entity;
+    }
+
+    /**
+     * @param metadata metadata of the entity class
+     * @param column the primary key or a @Unique column
+     * @param value column value
+     * @return the instance of the row, null if the session has not read it
+     */
+    Object find(EntityMetadata metadata, String column, Object value) {
+        Rows classRows = rows.get(metadata.getType());
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        ColumnMetadata unique = metadata.getColumn(column);
+        if (classRows == null || pk == null || unique == null || value == null) {
+            return null;
+        }
+        if (unique == pk) {
+            return classRows.byKey.get(value);
+        }
+        Map<Object, Object> index = classRows.byUnique.get(unique.getName());
+        Object entity = index == null ? null : index.get(value);
+        if (entity == null || !Objects.equals(unique.get(entity), value) ||
+                classRows.byKey.get(pk.get(entity)) != entity) {
+            return null;
+        }
+        return entity;
+    }
+
+    /**
+     * @return the instance already registered for the row of the entity, or the entity
+     * itself once registered
+     */
+    Object register(EntityMetadata metadata, Object entity) {
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        Object key = pk == null ? null : pk.get(entity);
+        if (key == null) {
+            return entity;
+        }
+        Rows classRows = rows.computeIfAbsent(metadata.getType(), type -> new Rows());
+        Object managed = classRows.byKey.putIfAbsent(key, entity);
+        if (managed != null) {
+            return managed;
+        }
+        for (ColumnMetadata column : metadata.getUniqueColumns()) {
+            Object value = column.get(entity);
+            if (column != pk && value != null) {
+                classRows.byUnique.computeIfAbsent(column.getName(), name -> new HashMap<>()).put(value, entity);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Forget the row of a key, after it is deleted or written from another instance
+     */
+    void evict(EntityMetadata metadata, Object key) {
+        Rows classRows = rows.get(metadata.getType());
+        if (classRows != null && key != null) {
+            classRows.byKey.remove(key);
+        }
+    }
+
+    /**
+     * Forget the rows of a table, after a write that may change any of them
+     */
+    void evictTable(String tableName) {
+        Iterator<Class<?>> types = rows.keySet().iterator();
+        while (types.hasNext()) {
+            String table = EntityMetadata.of(types.next()).getTableName();
+            if (table == null || table.equalsIgnoreCase(tableName)) {
+                types.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if the entity is the instance of its row in the map
+     */
+    boolean contains(EntityMetadata metadata, Object entity) {
+        ColumnMetadata pk = metadata.getPrimaryKey();
+        Rows classRows = rows.get(metadata.getType());
+        return pk != null && classRows != null && classRows.byKey.get(pk.get(entity)) == entity;
+    }
+
+    void clear() {
+        rows.clear();
+    }
+
+    int size() {
+        int size = 0;
+        for (Rows classRows : rows.values()) {
+            size += classRows.byKey.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,179 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.exception.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holder of a lazily loaded @Reference: declare the field as Lazy&lt;User&gt; instead of User.
+ * Entities read from the database get a holder keeping the foreign key value, the target
+ * is only read on the first get(). The holders created by one query share batches of up to
+ * 500 keys: the first get() loads the targets of all the pending holders of its batch with
+ * one IN query, using the session of the calling thread if one is open.
+ *
+ * @param <T> referenced POJO class
+ */
+public final class Lazy<T> {
+    private final Object key;
+    private volatile Batch batch;
+    private T value;
+
+    private Lazy(Object key, Batch batch, T value) {
+        this.key = key;
+        this.batch = batch;
+        this.value = value;
+    }
+
+    /**
+     * @param value the referenced entity, may be null
+     * @return a loaded holder, e.g. to set the reference of a new entity
+     */
+    public static <T> Lazy<T> of(T value) {
+        return new Lazy<>(null, null, value);
+    }
+
+    static <T> Lazy<T> loaded(Object key, T value) {
+        return new Lazy<>(key, null, value);
+    }
+
+    /**
+     * @return the referenced entity, null if the foreign key is null or matches no row
+     * @throws DataAccessException if the target cannot be read
+     */
+    public T get() {
+        Batch pending = batch;
+        if (pending != null) {
+            pending.load();
+        }
+        return value;
+    }
+
+    /**
+     * @return the foreign key value the holder was created with, null for a holder built with of()
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    public boolean isLoaded() {
+        return batch == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resolve(Object target) {
+        value = (T) target;
+        batch = null;
+    }
+
+    @Override
+    public String toString() {
+        return isLoaded() ? "Lazy{" + value + '}' : "Lazy{key=" + key + ", pending}";
+    }
+
+    /**
+     * The pending holders of one reference created by one query
+     */
+    static final class Batch {
+        private final ReferenceMetadata reference;
+        private final int batchSize;
+        private List<Lazy<?>> pending = new ArrayList<>();
+        private int size;
+
+        Batch(ReferenceMetadata reference, int batchSize) {
+            this.reference = reference;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * @param key foreign key value of a decoded entity
+         * @return a pending holder, or a loaded empty one for a null key
+         */
+        Lazy<Object> add(Object key) {
+            if (key == null) {
+                return loaded(null, null);
+            }
+            Lazy<Object> lazy = new Lazy<>(key, this, null);
+            synchronized (this) {
+                pending.add(lazy);
+                size++;
+            }
+            return lazy;
+        }
+
+        synchronized boolean isFull() {
+            return size >= batchSize;
+        }
+
+        private synchronized void load() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Set<Object> keys = new LinkedHashSet<>();
+            for (Lazy<?> lazy : pending) {
+                keys.add(lazy.key);
+            }
+            Map<Object, Object> targets;
+            try {
+                targets = ReferenceLoader.loadTargets(reference, keys, batchSize);
+            } catch (ArgumentFormatException e) {
+                throw new DataAccessException("Failed to load " + reference.getName(), e);
+            }
+            for (Lazy<?> lazy : pending) {
+                lazy.resolve(targets.get(lazy.key));
+            }
+            pending = new ArrayList<>();
+        }
+    }
+
+    /**
+     * The current batch of each lazy reference for entities created together, by one query,
+     * one multi-get or one copy of a result. A full batch is replaced by a new one.
+     */
+    static final class Batches {
+        private final ReferenceMetadata[] references;
+        private final Batch[] batches;
+
+        /**
+         * @param references lazy references of the entities
+         */
+        Batches(Collection<ReferenceMetadata> references) {
+            this.references = references.toArray(new ReferenceMetadata[0]);
+            this.batches = new Batch[this.references.length];
+            for (int i = 0; i < batches.length; i++) {
+                batches[i] = new Batch(this.references[i], ReferenceLoader.BATCH_SIZE);
+            }
+        }
+
+        /**
+         * @return batches for every lazy reference of a class
+         */
+        static Batches of(EntityMetadata metadata) {
+            List<ReferenceMetadata> lazy = new ArrayList<>();
+            for (ReferenceMetadata reference : metadata.getReferences()) {
+                if (reference.isLazy()) {
+                    lazy.add(reference);
+                }
+            }
+            return new Batches(lazy);
+        }
+
+        /**
+         * Give the lazy references of an entity pending holders in the current batches
+         */
+        void setPending(Object entity) {
+            for (int i = 0; i < references.length; i++) {
+                if (batches[i].isFull()) {
+                    // one query per batch, and a long stream does not keep all its holders
+                    batches[i] = new Batch(references[i], ReferenceLoader.BATCH_SIZE);
+                }
+                references[i].setPending(entity, batches[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package dev.ade.project.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records found by a lookup on many primary keys, in the order the keys were requested,
+ * together with the keys no record was found for.
+ */
+public class MultiGetResult {
+    private final Map<Object, Object> found;
+    private final List<Object> missingIds;
+
+    public MultiGetResult(Map<Object, Object> found, List<Object> missingIds) {
+        this.found = Collections.unmodifiableMap(found);
+        this.missingIds = Collections.unmodifiableList(missingIds);
+    }
+
+    /**
+     * @return the records found, in request order
+     */
+    public List<Object> getFound() {
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * @return the records found keyed by primary key, iterating in request order
+     */
+    public Map<Object, Object> asMap() {
+        return found;
+    }
+
+    /**
+     * @return the requested keys without a record
+     */
+    public List<Object> getMissingIds() {
+        return missingIds;
+    }
+
+    public boolean isComplete() {
+        return missingIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "MultiGetResult{" +
+                "found=" + found.values() +
+                ", missingIds=" + missingIds +
+                '}';
+    }
+}
@@ -0,0 +1,412 @@
+package dev.ade.project.orm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rows of an entity cache serialized into direct ByteBuffer slabs, so a large cache
+ * holds no entity or String objects on heap; only the key index does. Rows are
+ * appended to the current slab, when the slabs are full the oldest slab is reused
+ * and the rows left in it are evicted. A row is written as its length, its expiry and
+ * one tagged value per column, and is decoded whole or one column at a time.
+ * Not thread-safe, the owning EntityCache locks around every call.
+ */
+final class OffHeapRowStore {
+    static final int SLAB_BYTES = 1 << 20;
+    // row length and expiry
+    private static final int HEADER_BYTES = 12;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte CHAR = 9;
+    private static final byte DECIMAL = 10;
+    private static final byte SQL_DATE = 11;
+    private static final byte SQL_TIME = 12;
+    private static final byte TIMESTAMP = 13;
+    private static final byte DATE = 14;
+    private static final byte LOCAL_DATE = 15;
+    private static final byte LOCAL_DATE_TIME = 16;
+    private static final byte BYTES = 17;
+    private static final byte ENUM = 18;
+
+    private final Class<?>[] types;
+    private final int slabBytes;
+    private final ByteBuffer[] slabs;
+    // keys written into each slab, checked against the index when the slab is reused
+    private final List<List<Object>> slabKeys;
+    private final Map<Object, Long> index = new HashMap<>();
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(scratch);
+    private final AtomicLong evictions = new AtomicLong();
+    private int current = -1;
+    private int position;
+    private long liveBytes;
+
+    /**
+     * @param types field types of the columns, in column order
+     * @param capacity off-heap bytes the slabs may take
+     * @param slabBytes size of one slab, rows larger than a slab are not stored
+     */
+    OffHeapRowStore(Class<?>[] types, long capacity, int slabBytes) {
+        this.types = types;
+        this.slabBytes = (int) Math.max(HEADER_BYTES, Math.min(slabBytes, capacity));
+        int count = (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacity / this.slabBytes));
+        this.slabs = new ByteBuffer[count];
+        this.slabKeys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            slabKeys.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Store the row of a key, replacing its previous row
+     *
+     * @param values column values in column order
+     * @param expiresAt System.nanoTime() after which the row expires, ignored when 0
+     * @return false if the row has a value of an unsupported type or does not fit in a slab
+     */
+    boolean put(Object key, Object[] values, long expiresAt) {
+        remove(key);
+        scratch.reset();
+        try {
+            for (int c = 0; c < values.length; c++) {
+                if (!write(values[c])) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            // writes to a ByteArrayOutputStream do not fail
+            throw new IllegalStateException(e);
+        }
+        int length = HEADER_BYTES + scratch.size();
+        if (length > slabBytes) {
+            return false;
+        }
+        if (current < 0 || position + length > slabBytes) {
+            nextSlab();
+        }
+        ByteBuffer slab = slabs[current].duplicate();
+        slab.position(position);
+        slab.putInt(length);
+        slab.putLong(expiresAt);
+        slab.put(scratch.toByteArray());
+        index.put(key, ((long) current << 32) | position);
+        slabKeys.get(current).add(key);
+        position += length;
+        liveBytes += length;
+        return true;
+    }
+
+    /**
+     * @return the column values of a key, null if it is not stored or expired
+     */
+    Object[] get(Object key) {
+        ByteBuffer row = open(key);
+        if (row == null) {
+            return null;
+        }
+        Object[] values = new Object[types.length];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = read(row, c);
+        }
+        return values;
+    }
+
+    /**
+     * Decode some columns of a key without decoding the rest of the row
+     *
+     * @param columns column indexes
+     * @return the values of the columns, null if the key is not stored or expired
+     */
+    Object[] getColumns(Object key, int... columns) {
+        ByteBuffer row = open(key);
+        if (row == null) {
+            return null;
+        }
+        int start = row.position();
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            row.position(start);
+            for (int c = 0; c < columns[i]; c++) {
+                skip(row);
+            }
+            values[i] = read(row, columns[i]);
+        }
+        return values;
+    }
+
+    void remove(Object key) {
+        Long location = index.remove(key);
+        if (location != null) {
+            liveBytes -= slabs[(int) (location >>> 32)].getInt((int) (long) location);
+        }
+    }
+
+    /**
+     * Drop every row, the slabs stay allocated for reuse
+     */
+    void clear() {
+        index.clear();
+        for (List<Object> keys : slabKeys) {
+            keys.clear();
+        }
+        current = -1;
+        position = 0;
+        liveBytes = 0;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * @return off-heap bytes allocated for slabs
+     */
+    long getAllocatedBytes() {
+        long allocated = 0;
+        for (ByteBuffer slab : slabs) {
+            if (slab != null) {
+                allocated += slab.capacity();
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * @return bytes taken by the rows still stored
+     */
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return number of rows dropped because their slab was reused or they expired
+     */
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Move to the next slab in the ring, allocating it or evicting the rows left in it
+     */
+    private void nextSlab() {
+        current = (current + 1) % slabs.length;
+        position = 0;
+        if (slabs[current] == null) {
+            slabs[current] = ByteBuffer.allocateDirect(slabBytes);
+            return;
+        }
+        List<Object> keys = slabKeys.get(current);
+        for (Object key : keys) {
+            Long location = index.get(key);
+            if (location != null && (int) (location >>> 32) == current) {
+                remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        keys.clear();
+    }
+
+    /**
+     * @return a view of the row positioned at its first column, null if missing or expired
+     */
+    private ByteBuffer open(Object key) {
+        Long location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer row = slabs[(int) (location >>> 32)].duplicate();
+        row.position((int) (long) location + 4);
+        long expiresAt = row.getLong();
+        if (expiresAt != 0 && System.nanoTime() - expiresAt > 0) {
+            remove(key);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return row;
+    }
+
+    private boolean write(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            writeBytes(STRING, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof BigDecimal) {
+            writeBytes(DECIMAL, value.toString().getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof Date || value instanceof Time || value.getClass() == java.util.Date.class) {
+            out.writeByte(value instanceof Date ? SQL_DATE : value instanceof Time ? SQL_TIME : DATE);
+            out.writeLong(((java.util.Date) value).getTime());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(LOCAL_DATE);
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+            out.writeLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+        } else if (value instanceof byte[]) {
+            writeBytes(BYTES, (byte[]) value);
+        } else if (value instanceof Enum) {
+            writeBytes(ENUM, ((Enum<?>) value).name().getBytes(StandardCharsets.UTF_8));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeBytes(byte tag, byte[] bytes) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object read(ByteBuffer row, int column) {
+        byte tag = row.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(row), StandardCharsets.UTF_8);
+            case INT:
+                return row.getInt();
+            case LONG:
+                return row.getLong();
+            case DOUBLE:
+                return row.getDouble();
+            case FLOAT:
+                return row.getFloat();
+            case SHORT:
+                return row.getShort();
+            case BYTE:
+                return row.get();
+            case BOOLEAN:
+                return row.get() != 0;
+            case CHAR:
+                return row.getChar();
+            case DECIMAL:
+                return new BigDecimal(new String(readBytes(row), StandardCharsets.UTF_8));
+            case SQL_DATE:
+                return new Date(row.getLong());
+            case SQL_TIME:
+                return new Time(row.getLong());
+            case DATE:
+                return new java.util.Date(row.getLong());
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(row.getLong());
+                timestamp.setNanos(row.getInt());
+                return timestamp;
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(row.getLong());
+            case LOCAL_DATE_TIME:
+                LocalDate date = LocalDate.ofEpochDay(row.getLong());
+                return LocalDateTime.of(date, LocalTime.ofNanoOfDay(row.getLong()));
+            case BYTES:
+                return readBytes(row);
+            case ENUM:
+                return Enum.valueOf((Class<Enum>) types[column], new String(readBytes(row), StandardCharsets.UTF_8));
+            default:
+                throw new IllegalStateException("Corrupt row, unknown tag " + tag);
+        }
+    }
+
+    private void skip(ByteBuffer row) {
+        byte tag = row.get();
+        int length;
+        switch (tag) {
+            case NULL:
+                length = 0;
+                break;
+            case BYTE:
+            case BOOLEAN:
+                length = 1;
+                break;
+            case SHORT:
+            case CHAR:
+                length = 2;
+                break;
+            case INT:
+            case FLOAT:
+                length = 4;
+                break;
+            case LONG:
+            case DOUBLE:
+            case SQL_DATE:
+            case SQL_TIME:
+            case DATE:
+            case LOCAL_DATE:
+                length = 8;
+                break;
+            case TIMESTAMP:
+                length = 12;
+                break;
+            case LOCAL_DATE_TIME:
+                length = 16;
+                break;
+            case STRING:
+            case DECIMAL:
+            case BYTES:
+            case ENUM:
+                length = row.getInt();
+                break;
+            default:
+                throw new IllegalStateException("Corrupt row, unknown tag " + tag);
+        }
+        row.position(row.position() + length);
+    }
+
+    private static byte[] readBytes(ByteBuffer row) {
+        byte[] bytes = new byte[row.getInt()];
+        row.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,43 @@
+package dev.ade.project.orm;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of records read with keyset pagination, with the cursor to read the next page
+ */
+public class Page {
+    private final List<Object> items;
+    private final String nextCursor;
+
+    public Page(List<Object> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return records of the page in the requested order
+     */
+    public List<Object> getItems() {
+        return items;
+    }
+
+    /**
+     * @return opaque cursor to pass as afterKey for the next page, null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "items=" + items +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
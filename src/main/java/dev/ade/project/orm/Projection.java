@@ -0,0 +1,274 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.ColumnName;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How the rows of a column or join query are returned:
+ * <ul>
+ *     <li>{@link #to(Class)} maps each row into a DTO class with @ColumnName fields
+ *     (like an entity, no @TableName needed) or into an interface whose getters carry
+ *     @ColumnName, values are read with the typed getters of the field/return type;
+ *     default methods of the interface run on the row</li>
+ *     <li>{@link #rows()} keeps the rows in a RowSet backed by typed arrays</li>
+ * </ul>
+ * Column positions are resolved once per query, not per row.
+ *
+ * @param <R> result type of the query
+ */
+public abstract class Projection<R> {
+
+    /**
+     * Collects the rows of one ResultSet
+     */
+    interface Collector<R> {
+        void add(ResultSet rs) throws SQLException;
+
+        R result();
+    }
+
+    Projection() {}
+
+    /**
+     * Create the collector for a ResultSet
+     *
+     * @param rs a ResultSet before its first row
+     * @param columnNames the requested columns, optionally qualified with their table
+     */
+    abstract Collector<R> collector(ResultSet rs, List<String> columnNames) throws SQLException;
+
+    /**
+     * @param type a class with @ColumnName fields and a no-argument constructor, or an
+     *             interface with @ColumnName getters
+     * @return a projection returning a list of instances of the type
+     */
+    public static <T> Projection<List<T>> to(Class<T> type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Projection type is required");
+        }
+        return type.isInterface() ? new InterfaceProjection<>(type) : new ClassProjection<>(type);
+    }
+
+    /**
+     * @return a projection returning the rows in a RowSet
+     */
+    public static Projection<RowSet> rows() {
+        return new Projection<RowSet>() {
+            @Override
+            Collector<RowSet> collector(ResultSet rs, List<String> columnNames) throws SQLException {
+                int[] indexes = RowDecoder.columnIndexes(rs, columnNames);
+                RowSet rows = RowSet.of(rs, columnNames, indexes);
+                return new Collector<RowSet>() {
+                    @Override
+                    public void add(ResultSet rs) throws SQLException {
+                        rows.add(rs, indexes);
+                    }
+
+                    @Override
+                    public RowSet result() {
+                        return rows;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Rows as lists of String cells, the historical result of the column and join queries
+     */
+    static Projection<List<List<Object>>> text() {
+        return new Projection<List<List<Object>>>() {
+            @Override
+            Collector<List<List<Object>>> collector(ResultSet rs, List<String> columnNames) throws SQLException {
+                int[] indexes = RowDecoder.columnIndexes(rs, columnNames);
+                List<List<Object>> rows = new ArrayList<>();
+                return new Collector<List<List<Object>>>() {
+                    @Override
+                    public void add(ResultSet rs) throws SQLException {
+                        rows.add(RowDecoder.readColumns(rs, indexes));
+                    }
+
+                    @Override
+                    public List<List<Object>> result() {
+                        return rows;
+                    }
+                };
+            }
+        };
+    }
+
+    private static final class ClassProjection<T> extends Projection<List<T>> {
+        private final Class<T> type;
+        private final EntityMetadata metadata;
+
+        private ClassProjection(Class<T> type) {
+            this.type = type;
+            this.metadata = EntityMetadata.of(type);
+        }
+
+        @Override
+        Collector<List<T>> collector(ResultSet rs, List<String> columnNames) throws SQLException {
+            RowDecoder decoder = RowDecoder.of(metadata, rs);
+            List<T> rows = new ArrayList<>();
+            return new Collector<List<T>>() {
+                @Override
+                public void add(ResultSet rs) throws SQLException {
+                    rows.add(type.cast(decoder.decode(rs)));
+                }
+
+                @Override
+                public List<T> result() {
+                    return rows;
+                }
+            };
+        }
+    }
+
+    private static final class InterfaceProjection<T> extends Projection<List<T>> {
+        private final Class<T> type;
+        private final Method[] getters;
+        private final String[] columns;
+        private final Map<Method, MethodHandle> defaultMethods = new HashMap<>();
+
+        /**
+         * @throws IllegalArgumentException if the interface has an abstract method that
+         * is not a @ColumnName getter
+         */
+        private InterfaceProjection(Class<T> type) {
+            this.type = type;
+            List<Method> getters = new ArrayList<>();
+            for (Method method : type.getMethods()) {
+                if (method.isAnnotationPresent(ColumnName.class) && method.getParameterCount() == 0) {
+                    getters.add(method);
+                } else if (method.isDefault()) {
+                    defaultMethods.put(method, defaultMethod(method));
+                } else if (!Modifier.isStatic(method.getModifiers()) && !isObjectMethod(method)) {
+                    throw new IllegalArgumentException(type.getName() + "." + method.getName() +
+                            " is neither a @ColumnName getter nor a default method");
+                }
+            }
+            this.getters = getters.toArray(new Method[0]);
+            this.columns = new String[this.getters.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = this.getters[i].getAnnotation(ColumnName.class).columnName();
+            }
+        }
+
+        @Override
+        Collector<List<T>> collector(ResultSet rs, List<String> columnNames) throws SQLException {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            Map<Method, Integer> slots = new HashMap<>();
+            int[] indexes = new int[getters.length];
+            Method[] present = new Method[getters.length];
+            int n = 0;
+            for (int i = 0; i < getters.length; i++) {
+                for (int c = 1; c <= rsmd.getColumnCount(); c++) {
+                    if (rsmd.getColumnLabel(c).equalsIgnoreCase(columns[i])) {
+                        slots.put(getters[i], n);
+                        indexes[n] = c;
+                        present[n] = getters[i];
+                        n++;
+                        break;
+                    }
+                }
+            }
+            int width = n;
+            List<T> rows = new ArrayList<>();
+            return new Collector<List<T>>() {
+                @Override
+                public void add(ResultSet rs) throws SQLException {
+                    Object[] values = new Object[width];
+                    for (int i = 0; i < width; i++) {
+                        values[i] = RowDecoder.readValue(rs, indexes[i], present[i].getReturnType());
+                    }
+                    rows.add(type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                            (proxy, method, args) -> invoke(proxy, method, args, slots, values))));
+                }
+
+                @Override
+                public List<T> result() {
+                    return rows;
+                }
+            };
+        }
+
+        private Object invoke(Object proxy, Method method, Object[] args, Map<Method, Integer> slots,
+                              Object[] values) throws Throwable {
+            Integer slot = slots.get(method);
+            if (slot != null) {
+                Object value = values[slot];
+                return value == null && method.getReturnType().isPrimitive() ? defaultValue(method) : value;
+            }
+            MethodHandle defaultMethod = defaultMethods.get(method);
+            if (defaultMethod != null) {
+                return defaultMethod.bindTo(proxy).invokeWithArguments(args == null ? new Object[0] : args);
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    Map<String, Object> cells = new HashMap<>();
+                    slots.forEach((m, i) -> cells.put(m.getAnnotation(ColumnName.class).columnName(), values[i]));
+                    return type.getSimpleName() + cells;
+                default:
+                    // a @ColumnName getter whose column was not part of the query
+                    return method.getReturnType().isPrimitive() ? defaultValue(method) : null;
+            }
+        }
+
+        /**
+         * @return a handle calling the interface body of a default method, bound to a proxy per call
+         */
+        private static MethodHandle defaultMethod(Method method) {
+            Class<?> declaring = method.getDeclaringClass();
+            try {
+                MethodHandles.Lookup lookup;
+                try {
+                    // Java 9 and later
+                    Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class,
+                            MethodHandles.Lookup.class);
+                    lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, declaring, MethodHandles.lookup());
+                } catch (NoSuchMethodException e) {
+                    // Java 8 has no public way to a lookup with private access to the interface
+                    Constructor<MethodHandles.Lookup> constructor =
+                            MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                    constructor.setAccessible(true);
+                    lookup = constructor.newInstance(declaring, MethodHandles.Lookup.PRIVATE);
+                }
+                return lookup.unreflectSpecial(method, declaring);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw new IllegalArgumentException("Cannot call default method " + method.getName() + " of " +
+                        declaring.getName(), e);
+            }
+        }
+
+        private static boolean isObjectMethod(Method method) {
+            try {
+                Object.class.getMethod(method.getName(), method.getParameterTypes());
+                return true;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        private static Object defaultValue(Method method) {
+            return Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+        }
+    }
+}
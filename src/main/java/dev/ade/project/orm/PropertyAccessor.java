@@ -0,0 +1,375 @@
+package dev.ade.project.orm;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes one property of a POJO without reflective invocation.
+ * Getter and setter are bound once through LambdaMetafactory into small
+ * functional objects the JIT can inline. int, long, double and boolean
+ * properties have unboxed getInt/setInt style paths. When there is no public
+ * getter or setter the property is accessed through its field instead.
+ */
+public abstract class PropertyAccessor {
+
+    interface ObjectGetter { Object get(Object entity); }
+    interface ObjectSetter { void set(Object entity, Object value); }
+    interface IntGetter { int get(Object entity); }
+    interface IntSetter { void set(Object entity, int value); }
+    interface LongGetter { long get(Object entity); }
+    interface LongSetter { void set(Object entity, long value); }
+    interface DoubleGetter { double get(Object entity); }
+    interface DoubleSetter { void set(Object entity, double value); }
+    interface BooleanGetter { boolean get(Object entity); }
+    interface BooleanSetter { void set(Object entity, boolean value); }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    public abstract Object get(Object entity);
+
+    public abstract void set(Object entity, Object value);
+
+    public int getInt(Object entity) {
+        return ((Number) get(entity)).intValue();
+    }
+
+    public void setInt(Object entity, int value) {
+        set(entity, value);
+    }
+
+    public long getLong(Object entity) {
+        return ((Number) get(entity)).longValue();
+    }
+
+    public void setLong(Object entity, long value) {
+        set(entity, value);
+    }
+
+    public double getDouble(Object entity) {
+        return ((Number) get(entity)).doubleValue();
+    }
+
+    public void setDouble(Object entity, double value) {
+        set(entity, value);
+    }
+
+    public boolean getBoolean(Object entity) {
+        return (Boolean) get(entity);
+    }
+
+    public void setBoolean(Object entity, boolean value) {
+        set(entity, value);
+    }
+
+    /**
+     * Build the accessor of a field
+     *
+     * @param field the field
+     * @param getter public getter of the field, may be null
+     * @param setter public setter of the field, may be null
+     * @return an accessor using generated lambdas, or the field when they cannot be generated
+     */
+    public static PropertyAccessor of(Field field, Method getter, Method setter) {
+        if (getter != null && setter != null && Modifier.isPublic(field.getDeclaringClass().getModifiers())) {
+            try {
+                return generate(field.getType(), getter, setter);
+            } catch (Throwable e) {
+                // e.g. the entity class is not visible from this class loader, fall through
+            }
+        }
+        field.setAccessible(true);
+        return new FieldAccessor(field);
+    }
+
+    private static PropertyAccessor generate(Class<?> type, Method getter, Method setter) throws Throwable {
+        MethodHandle get = LOOKUP.unreflect(getter);
+        MethodHandle set = LOOKUP.unreflect(setter);
+        if (type == int.class) {
+            return new IntAccessor((IntGetter) bind(IntGetter.class, get), (IntSetter) bind(IntSetter.class, set));
+        }
+        if (type == long.class) {
+            return new LongAccessor((LongGetter) bind(LongGetter.class, get), (LongSetter) bind(LongSetter.class, set));
+        }
+        if (type == double.class) {
+            return new DoubleAccessor((DoubleGetter) bind(DoubleGetter.class, get),
+                    (DoubleSetter) bind(DoubleSetter.class, set));
+        }
+        if (type == boolean.class) {
+            return new BooleanAccessor((BooleanGetter) bind(BooleanGetter.class, get),
+                    (BooleanSetter) bind(BooleanSetter.class, set));
+        }
+        return new ObjectAccessor((ObjectGetter) bind(ObjectGetter.class, get),
+                (ObjectSetter) bind(ObjectSetter.class, set));
+    }
+
+    /**
+     * Spin a lambda implementing the single method of the functional interface by calling the target
+     */
+    private static Object bind(Class<?> functionalInterface, MethodHandle target) throws Throwable {
+        Method sam = functionalInterface.getDeclaredMethods()[0];
+        MethodType samType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
+        MethodType instantiated = target.type();
+        if (sam.getReturnType() == void.class) {
+            instantiated = instantiated.changeReturnType(void.class);
+        } else if (!sam.getReturnType().isPrimitive()) {
+            instantiated = instantiated.changeReturnType(wrap(instantiated.returnType()));
+        }
+        if (sam.getParameterCount() == 2 && !sam.getParameterTypes()[1].isPrimitive()) {
+            instantiated = instantiated.changeParameterType(1, wrap(instantiated.parameterType(1)));
+        }
+        CallSite site = LambdaMetafactory.metafactory(LOOKUP, sam.getName(),
+                MethodType.methodType(functionalInterface), samType, target, instantiated);
+        return site.getTarget().invoke();
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    private static final class ObjectAccessor extends PropertyAccessor {
+        private final ObjectGetter getter;
+        private final ObjectSetter setter;
+
+        private ObjectAccessor(ObjectGetter getter, ObjectSetter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void set(Object entity, Object value) {
+            setter.set(entity, value);
+        }
+    }
+
+    private static final class IntAccessor extends PropertyAccessor {
+        private final IntGetter getter;
+        private final IntSetter setter;
+
+        private IntAccessor(IntGetter getter, IntSetter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void set(Object entity, Object value) {
+            setter.set(entity, ((Number) value).intValue());
+        }
+
+        @Override
+        public int getInt(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void setInt(Object entity, int value) {
+            setter.set(entity, value);
+        }
+    }
+
+    private static final class LongAccessor extends PropertyAccessor {
+        private final LongGetter getter;
+        private final LongSetter setter;
+
+        private LongAccessor(LongGetter getter, LongSetter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void set(Object entity, Object value) {
+            setter.set(entity, ((Number) value).longValue());
+        }
+
+        @Override
+        public long getLong(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void setLong(Object entity, long value) {
+            setter.set(entity, value);
+        }
+    }
+
+    private static final class DoubleAccessor extends PropertyAccessor {
+        private final DoubleGetter getter;
+        private final DoubleSetter setter;
+
+        private DoubleAccessor(DoubleGetter getter, DoubleSetter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void set(Object entity, Object value) {
+            setter.set(entity, ((Number) value).doubleValue());
+        }
+
+        @Override
+        public double getDouble(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void setDouble(Object entity, double value) {
+            setter.set(entity, value);
+        }
+    }
+
+    private static final class BooleanAccessor extends PropertyAccessor {
+        private final BooleanGetter getter;
+        private final BooleanSetter setter;
+
+        private BooleanAccessor(BooleanGetter getter, BooleanSetter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void set(Object entity, Object value) {
+            setter.set(entity, (Boolean) value);
+        }
+
+        @Override
+        public boolean getBoolean(Object entity) {
+            return getter.get(entity);
+        }
+
+        @Override
+        public void setBoolean(Object entity, boolean value) {
+            setter.set(entity, value);
+        }
+    }
+
+    /**
+     * Fallback reading and writing the field directly, primitives without boxing
+     */
+    private static final class FieldAccessor extends PropertyAccessor {
+        private final Field field;
+
+        private FieldAccessor(Field field) {
+            this.field = field;
+        }
+
+        @Override
+        public Object get(Object entity) {
+            try {
+                return field.get(entity);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + field, e);
+            }
+        }
+
+        @Override
+        public void set(Object entity, Object value) {
+            try {
+                field.set(entity, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot write " + field, e);
+            }
+        }
+
+        @Override
+        public int getInt(Object entity) {
+            try {
+                return field.getInt(entity);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + field, e);
+            }
+        }
+
+        @Override
+        public void setInt(Object entity, int value) {
+            try {
+                field.setInt(entity, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot write " + field, e);
+            }
+        }
+
+        @Override
+        public long getLong(Object entity) {
+            try {
+                return field.getLong(entity);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + field, e);
+            }
+        }
+
+        @Override
+        public void setLong(Object entity, long value) {
+            try {
+                field.setLong(entity, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot write " + field, e);
+            }
+        }
+
+        @Override
+        public double getDouble(Object entity) {
+            try {
+                return field.getDouble(entity);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + field, e);
+            }
+        }
+
+        @Override
+        public void setDouble(Object entity, double value) {
+            try {
+                field.setDouble(entity, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot write " + field, e);
+            }
+        }
+
+        @Override
+        public boolean getBoolean(Object entity) {
+            try {
+                return field.getBoolean(entity);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + field, e);
+            }
+        }
+
+        @Override
+        public void setBoolean(Object entity, boolean value) {
+            try {
+                field.setBoolean(entity, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot write " + field, e);
+            }
+        }
+    }
+}
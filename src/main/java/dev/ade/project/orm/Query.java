@@ -0,0 +1,540 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.util.MapperUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A select on the table of an AdeOrm built step by step:
+ * <pre>
+ *     List&lt;Object&gt; posts = postOrm.query()
+ *             .where(Criterion.eq("city", "Chicago").and(Criterion.ge("rating", 3)))
+ *             .orderBy("rating", "desc")
+ *             .limit(10)
+ *             .list();
+ * </pre>
+ * Aggregates are computed by the database:
+ * <pre>
+ *     List&lt;AggregateRow&gt; cities = postOrm.query()
+ *             .groupBy("city")
+ *             .having(Aggregate.count(), "&gt;", 1)
+ *             .aggregate(Aggregate.avg("rating"), Aggregate.count());
+ * </pre>
+ * The @Reference fields of the returned entities are filled by a fetch plan, either in the
+ * same statement with a left join or with one IN query per batch of distinct keys:
+ * <pre>
+ *     postOrm.query().fetch("user", FetchMode.JOIN).list();
+ * </pre>
+ * The SQL of a query is compiled once per shape (selected columns, criteria without
+ * their values, order, presence of limit/offset) and cached, values and limits are
+ * statement parameters so the pooled prepared statement is reused as well.
+ * A Query is not thread-safe, build one per use.
+ */
+public class Query {
+    private static final List<String> OPERATORS = Arrays.asList("=", "<>", "<", "<=", ">", ">=");
+
+    /**
+     * Reads the result of a query
+     */
+    private interface ResultHandler<T> {
+        T handle(ResultSet rs) throws SQLException;
+    }
+
+    private final AdeOrm orm;
+    private final EntityMetadata metadata;
+    private List<String> columns = Collections.emptyList();
+    private Criterion where;
+    private final List<String> orderBy = new ArrayList<>();
+    private List<String> groupBy = Collections.emptyList();
+    private final List<Having> having = new ArrayList<>();
+    private Integer limit;
+    private Integer offset;
+    private final Map<String, FetchMode> fetches = new LinkedHashMap<>();
+
+    Query(AdeOrm orm, EntityMetadata metadata) {
+        this.orm = orm;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Only read some columns, the other fields of the returned entities keep their default
+     * value. The entities are not kept in the identity map of a session, and AdeOrm.update
+     * of one only writes the selected columns it changed.
+     *
+     * @param columnNames @ColumnName columns of the entity, with the primary key for the
+     *                    entities to be updated
+     */
+    public Query select(String... columnNames) {
+        this.columns = Arrays.asList(columnNames.clone());
+        return this;
+    }
+
+    /**
+     * Replace the criteria of the query
+     */
+    public Query where(Criterion criterion) {
+        this.where = criterion;
+        return this;
+    }
+
+    /**
+     * Add a criterion that must hold as well as the current ones
+     */
+    public Query and(Criterion criterion) {
+        this.where = where == null ? criterion : where.and(criterion);
+        return this;
+    }
+
+    /**
+     * Add a criterion that may hold instead of the current ones
+     */
+    public Query or(Criterion criterion) {
+        this.where = where == null ? criterion : where.or(criterion);
+        return this;
+    }
+
+    /**
+     * @param column column to order by, later calls break ties of earlier ones
+     * @param order "asc" for ascending, "desc" for descending
+     */
+    public Query orderBy(String column, String order) throws ArgumentFormatException {
+        if (!"asc".equals(order) && !"desc".equals(order)) {
+            throw new ArgumentFormatException("Order must be in \"asc\" or \"desc\"");
+        }
+        Criterion.checkColumn(metadata, column);
+        orderBy.add(column + " " + order);
+        return this;
+    }
+
+    /**
+     * Order the rows of an aggregate query by one of its aggregates
+     *
+     * @param aggregate aggregate to order by
+     * @param order "asc" for ascending, "desc" for descending
+     */
+    public Query orderBy(Aggregate aggregate, String order) throws ArgumentFormatException {
+        if (!"asc".equals(order) && !"desc".equals(order)) {
+            throw new ArgumentFormatException("Order must be in \"asc\" or \"desc\"");
+        }
+        aggregate.checkColumn(metadata);
+        orderBy.add(aggregate.toSql() + " " + order);
+        return this;
+    }
+
+    /**
+     * Group the rows of an aggregate query
+     *
+     * @param columnNames @ColumnName columns of the entity
+     */
+    public Query groupBy(String... columnNames) throws ArgumentFormatException {
+        for (String column : columnNames) {
+            Criterion.checkColumn(metadata, column);
+        }
+        this.groupBy = Arrays.asList(columnNames.clone());
+        return this;
+    }
+
+    /**
+     * Keep the groups whose aggregate compares to a value, several conditions must all hold
+     *
+     * @param aggregate aggregate to compare
+     * @param operator one of =, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=
+     * @param value value to compare to
+     */
+    public Query having(Aggregate aggregate, String operator, Object value) throws ArgumentFormatException {
+        if (!OPERATORS.contains(operator)) {
+            throw new ArgumentFormatException("Operator must be one of " + OPERATORS);
+        }
+        aggregate.checkColumn(metadata);
+        having.add(new Having(aggregate, operator, value));
+        return this;
+    }
+
+    /**
+     * Load a @Reference of the returned entities, without a query per entity
+     *
+     * @param reference name of a @Reference field of the entity
+     * @param mode JOIN to read the target in the same statement, BATCH to read the targets
+     *             with one IN query per batch of distinct foreign keys
+     */
+    public Query fetch(String reference, FetchMode mode) throws ArgumentFormatException {
+        if (metadata.getReference(reference) == null) {
+            throw new ArgumentFormatException(reference + " is not a @Reference of " + metadata.getType().getName());
+        }
+        fetches.put(reference, Objects.requireNonNull(mode));
+        return this;
+    }
+
+    public Query limit(int limit) {
+        this.limit = Math.max(0, limit);
+        return this;
+    }
+
+    public Query offset(int offset) {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * @return the parameterized SQL of the query
+     */
+    public String toSql() throws ArgumentFormatException {
+        for (String column : columns) {
+            Criterion.checkColumn(metadata, column);
+        }
+        checkWhere();
+        List<Object> shape = Arrays.asList(columns, Criterion.shapeOf(where), new ArrayList<>(orderBy),
+                limit != null, offset != null);
+        return SqlCache.get(metadata.getType(), "query", shape, () ->
+                appendLimit(appendOrder(appendWhere(new StringBuilder("select ")
+                        .append(columns.isEmpty() ? "*" : String.join(", ", columns))
+                        .append(" from ").append(metadata.getTableName())))).toString());
+    }
+
+    /**
+     * @param aggregate true for the statement of aggregate, which holds the having conditions
+     * @return parameter values in the order of their placeholders
+     */
+    private List<Object> values(boolean aggregate) {
+        List<Object> values = whereValues();
+        if (aggregate) {
+            for (Having condition : having) {
+                values.add(condition.value);
+            }
+        }
+        if (limit != null) {
+            values.add(limit);
+        }
+        if (offset != null) {
+            values.add(offset);
+        }
+        return values;
+    }
+
+    /**
+     * Run the query
+     *
+     * @return the matching records
+     */
+    public List<Object> list() throws ArgumentFormatException {
+        List<ReferenceMetadata> joins = fetched(FetchMode.JOIN);
+        List<ColumnMetadata> selected = selectedColumns();
+        List<Object> result = joins.isEmpty() ? run(toSql(), values(false), rs -> {
+            List<Object> entities = new ArrayList<>();
+            RowDecoder decoder = RowDecoder.of(metadata, rs);
+            while (rs.next()) {
+                entities.add(track(decoder.decode(rs), selected));
+            }
+            return entities;
+        }) : listJoined(joins);
+        for (ReferenceMetadata reference : fetched(FetchMode.BATCH)) {
+            ReferenceLoader.load(result, reference, orm.getBatchSize());
+        }
+        return result;
+    }
+
+    /**
+     * Select the entity and the targets of its joined references in one statement,
+     * the target of a key is decoded once and shared by the rows referencing it
+     */
+    private List<Object> listJoined(List<ReferenceMetadata> joins) throws ArgumentFormatException {
+        List<ColumnMetadata> selected = selectedColumns();
+        checkWhere();
+        List<Object> shape = Arrays.asList("join", new ArrayList<>(fetches.entrySet()), columns,
+                Criterion.shapeOf(where), new ArrayList<>(orderBy), limit != null, offset != null);
+        String sql = SqlCache.get(metadata.getType(), "query", shape, () -> joinSql(selected, joins));
+        return run(sql, values(false), rs -> {
+            RowDecoder decoder = RowDecoder.at(metadata, selected, 1);
+            RowDecoder[] targetDecoders = new RowDecoder[joins.size()];
+            int[] keyIndexes = new int[joins.size()];
+            List<Map<Object, Object>> targets = new ArrayList<>();
+            int next = selected.size() + 1;
+            for (int j = 0; j < joins.size(); j++) {
+                EntityMetadata target = joins.get(j).getTarget();
+                targetDecoders[j] = RowDecoder.at(target, target.getColumns(), next);
+                keyIndexes[j] = next + target.getColumns().indexOf(joins.get(j).getTargetColumn());
+                targets.add(new HashMap<>());
+                next += target.getColumns().size();
+            }
+            List<Object> entities = new ArrayList<>();
+            while (rs.next()) {
+                Object entity = track(decoder.decode(rs), selected);
+                for (int j = 0; j < joins.size(); j++) {
+                    Object key = rs.getObject(keyIndexes[j]);
+                    Object target = key == null ? null : targets.get(j).get(key);
+                    if (key != null && target == null) {
+                        target = IdentityMap.manage(joins.get(j).getTarget(), targetDecoders[j].decode(rs));
+                        targets.get(j).put(key, target);
+                    }
+                    joins.get(j).set(entity, target);
+                }
+                entities.add(entity);
+            }
+            return entities;
+        });
+    }
+
+    private String joinSql(List<ColumnMetadata> selected, List<ReferenceMetadata> joins) {
+        List<String> names = new ArrayList<>();
+        for (ColumnMetadata column : selected) {
+            names.add("t." + column.getName());
+        }
+        StringBuilder from = new StringBuilder(" from ").append(metadata.getTableName()).append(" t");
+        for (int j = 0; j < joins.size(); j++) {
+            ReferenceMetadata reference = joins.get(j);
+            String alias = "r" + j;
+            for (ColumnMetadata column : reference.getTarget().getColumns()) {
+                names.add(alias + "." + column.getName());
+            }
+            from.append(" left join ").append(reference.getTarget().getTableName()).append(' ').append(alias)
+                    .append(" on t.").append(reference.getColumn().getName())
+                    .append(" = ").append(alias).append('.').append(reference.getTargetColumn().getName());
+        }
+        StringBuilder sql = new StringBuilder("select ").append(String.join(", ", names)).append(from);
+        if (where != null) {
+            sql.append(" where ");
+            where.appendSql(sql, "t.");
+        }
+        if (!orderBy.isEmpty()) {
+            List<String> qualified = new ArrayList<>();
+            for (String order : orderBy) {
+                qualified.add(order.indexOf('(') < 0 ? "t." + order : order);
+            }
+            sql.append(" order by ").append(String.join(", ", qualified));
+        }
+        return appendLimit(sql).toString();
+    }
+
+    /**
+     * Make a read entity the instance of its row, or snapshot the columns read into a partial one
+     */
+    private Object track(Object entity, List<ColumnMetadata> selected) {
+        if (columns.isEmpty()) {
+            return IdentityMap.manage(metadata, entity);
+        }
+        EntitySnapshots.take(metadata, entity, selected);
+        return entity;
+    }
+
+    private List<ColumnMetadata> selectedColumns() throws ArgumentFormatException {
+        if (columns.isEmpty()) {
+            return metadata.getColumns();
+        }
+        List<ColumnMetadata> selected = new ArrayList<>();
+        for (String column : columns) {
+            Criterion.checkColumn(metadata, column);
+            selected.add(metadata.getColumn(column));
+        }
+        return selected;
+    }
+
+    private List<ReferenceMetadata> fetched(FetchMode mode) {
+        List<ReferenceMetadata> references = new ArrayList<>();
+        fetches.forEach((name, m) -> {
+            if (m == mode) {
+                references.add(metadata.getReference(name));
+            }
+        });
+        return references;
+    }
+
+    /**
+     * Run the query for its first record
+     *
+     * @return the first matching record, null if none
+     */
+    public Object first() throws ArgumentFormatException {
+        Integer requested = limit;
+        limit = 1;
+        try {
+            List<Object> result = list();
+            return result.isEmpty() ? null : result.get(0);
+        } finally {
+            limit = requested;
+        }
+    }
+
+    /**
+     * Count the matching records with "select count(*)", order, limit and offset are ignored
+     *
+     * @return number of matching records
+     */
+    public long count() throws ArgumentFormatException {
+        checkWhere();
+        String sql = SqlCache.get(metadata.getType(), "count", Criterion.shapeOf(where), () ->
+                appendWhere(new StringBuilder("select count(*) from ").append(metadata.getTableName())).toString());
+        return run(sql, whereValues(), rs -> rs.next() ? rs.getLong(1) : 0L);
+    }
+
+    /**
+     * Check whether a record matches, the database stops at the first one
+     *
+     * @return true if at least one record matches
+     */
+    public boolean exists() throws ArgumentFormatException {
+        checkWhere();
+        String sql = SqlCache.get(metadata.getType(), "exists", Criterion.shapeOf(where), () ->
+                appendWhere(new StringBuilder("select 1 from ").append(metadata.getTableName()))
+                        .append(" limit 1").toString());
+        return run(sql, whereValues(), ResultSet::next);
+    }
+
+    /**
+     * Compute aggregates over the matching records, per group when groupBy was called
+     *
+     * @param aggregates aggregates to compute, at least one
+     * @return a row per group, a single row without groupBy
+     */
+    public List<AggregateRow> aggregate(Aggregate... aggregates) throws ArgumentFormatException {
+        if (aggregates.length == 0) {
+            throw new ArgumentFormatException("At least one aggregate is required");
+        }
+        List<Aggregate> selected = Arrays.asList(aggregates.clone());
+        Class<?>[] types = new Class<?>[selected.size()];
+        for (int i = 0; i < types.length; i++) {
+            selected.get(i).checkColumn(metadata);
+            types[i] = selected.get(i).resultType(metadata);
+        }
+        checkWhere();
+        List<Object> havingShape = new ArrayList<>(having.size());
+        for (Having condition : having) {
+            havingShape.add(condition.shape());
+        }
+        List<Object> shape = Arrays.asList(groupBy, selected, Criterion.shapeOf(where), havingShape,
+                new ArrayList<>(orderBy), limit != null, offset != null);
+        String sql = SqlCache.get(metadata.getType(), "aggregate", shape, () -> buildAggregateSql(selected));
+
+        return run(sql, values(true), rs -> {
+            List<AggregateRow> rows = new ArrayList<>();
+            while (rs.next()) {
+                Map<String, Object> groups = new LinkedHashMap<>();
+                for (int i = 0; i < groupBy.size(); i++) {
+                    String column = groupBy.get(i);
+                    groups.put(column, RowDecoder.readValue(rs, i + 1, metadata.getColumn(column).getType()));
+                }
+                Object[] values = new Object[types.length];
+                for (int i = 0; i < types.length; i++) {
+                    values[i] = RowDecoder.readValue(rs, groupBy.size() + i + 1, types[i]);
+                }
+                rows.add(new AggregateRow(groups, selected, values));
+            }
+            return rows;
+        });
+    }
+
+    private String buildAggregateSql(List<Aggregate> aggregates) {
+        List<String> selected = new ArrayList<>(groupBy);
+        for (Aggregate aggregate : aggregates) {
+            selected.add(aggregate.toSql());
+        }
+        StringBuilder sql = appendWhere(new StringBuilder("select ").append(String.join(", ", selected))
+                .append(" from ").append(metadata.getTableName()));
+        if (!groupBy.isEmpty()) {
+            sql.append(" group by ").append(String.join(", ", groupBy));
+        }
+        for (int i = 0; i < having.size(); i++) {
+            Having condition = having.get(i);
+            sql.append(i == 0 ? " having " : " and ").append(condition.aggregate.toSql())
+                    .append(' ').append(condition.operator).append(" ?");
+        }
+        return appendLimit(appendOrder(sql)).toString();
+    }
+
+    private void checkWhere() throws ArgumentFormatException {
+        if (where != null) {
+            where.checkColumns(metadata);
+        }
+    }
+
+    private List<Object> whereValues() {
+        List<Object> values = new ArrayList<>();
+        if (where != null) {
+            where.collectValues(values);
+        }
+        return values;
+    }
+
+    private StringBuilder appendWhere(StringBuilder sql) {
+        if (where != null) {
+            sql.append(" where ");
+            where.appendSql(sql, "");
+        }
+        return sql;
+    }
+
+    private StringBuilder appendOrder(StringBuilder sql) {
+        if (!orderBy.isEmpty()) {
+            sql.append(" order by ").append(String.join(", ", orderBy));
+        }
+        return sql;
+    }
+
+    private StringBuilder appendLimit(StringBuilder sql) {
+        if (limit != null) {
+            sql.append(" limit ?");
+        }
+        if (offset != null) {
+            sql.append(" offset ?");
+        }
+        return sql;
+    }
+
+    private <T> T run(String sql, List<Object> values, ResultHandler<T> handler) throws ArgumentFormatException {
+        try (Connection conn = orm.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            MapperUtil.setPs(ps, values.toArray());
+            try (ResultSet rs = ps.executeQuery()) {
+                return handler.handle(rs);
+            }
+        } catch (SQLException e) {
+            throw new ArgumentFormatException("Arguments format are not correct", e);
+        }
+    }
+
+    /**
+     * A having condition, equal to another one of the same shape whatever their values
+     */
+    private static final class Having {
+        private final Aggregate aggregate;
+        private final String operator;
+        private final Object value;
+
+        private Having(Aggregate aggregate, String operator, Object value) {
+            this.aggregate = aggregate;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        /**
+         * @return a key of the shape of the condition holding no value
+         */
+        private Object shape() {
+            return Arrays.asList(aggregate, operator);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Having)) return false;
+            Having that = (Having) o;
+            return aggregate.equals(that.aggregate) && operator.equals(that.operator);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(aggregate, operator);
+        }
+    }
+}
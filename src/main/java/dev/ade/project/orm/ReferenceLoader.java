@@ -0,0 +1,68 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch fetch of a @Reference: the distinct foreign key values of a list of entities are
+ * loaded with one IN/ANY query per batch and the targets are set into the entities.
+ */
+final class ReferenceLoader {
+    /**
+     * Keys per query of lazy references, which have no orm to take the batch size from
+     */
+    static final int BATCH_SIZE = 500;
+
+    private ReferenceLoader() {}
+
+    /**
+     * @param entities entities owning the reference
+     * @param reference the reference to load
+     * @param batchSize keys per query
+     */
+    static void load(Collection<?> entities, ReferenceMetadata reference, int batchSize)
+            throws ArgumentFormatException {
+        ColumnMetadata foreignKey = reference.getColumn();
+        Set<Object> keys = new LinkedHashSet<>();
+        for (Object entity : entities) {
+            Object key = foreignKey.get(entity);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        Map<Object, Object> targets = keys.isEmpty() ? new HashMap<>() : loadTargets(reference, keys, batchSize);
+        for (Object entity : entities) {
+            Object key = foreignKey.get(entity);
+            reference.set(entity, key == null ? null : targets.get(key));
+        }
+    }
+
+    /**
+     * @return the referenced entities by the value of their referenced column
+     */
+    static Map<Object, Object> loadTargets(ReferenceMetadata reference, Collection<Object> keys, int batchSize)
+            throws ArgumentFormatException {
+        ColumnMetadata targetColumn = reference.getTargetColumn();
+        AdeOrm targetOrm = new AdeOrm(reference.getTargetType());
+        targetOrm.setBatchSize(batchSize);
+        if (targetColumn.isPrimaryKey()) {
+            return targetOrm.getByIds(keys).asMap();
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        List<Object> list = new ArrayList<>(keys);
+        for (int from = 0; from < list.size(); from += batchSize) {
+            List<Object> chunk = list.subList(from, Math.min(list.size(), from + batchSize));
+            for (Object target : targetOrm.query().where(Criterion.in(targetColumn.getName(), chunk)).list()) {
+                targets.put(targetColumn.get(target), target);
+            }
+        }
+        return targets;
+    }
+}
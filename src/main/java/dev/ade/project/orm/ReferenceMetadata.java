@@ -0,0 +1,141 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.Reference;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Immutable description of a @Reference field: the @ForeignKey column of the owning
+ * entity holding the key and the entity class it points to. A field of type Lazy&lt;T&gt;
+ * is a lazy reference to T.
+ */
+public final class ReferenceMetadata {
+    private final String name;
+    private final Field field;
+    private final ColumnMetadata column;
+    private final Class<?> targetType;
+    private final boolean lazy;
+    private final PropertyAccessor accessor;
+
+    ReferenceMetadata(Field field, ColumnMetadata column) {
+        this.name = field.getName();
+        this.field = field;
+        this.column = column;
+        this.lazy = field.getType() == Lazy.class;
+        this.targetType = lazy ? lazyType(field) : field.getType();
+        this.accessor = PropertyAccessor.of(field,
+                findMethod(field, ColumnMetadata.getterName(field)),
+                findMethod(field, ColumnMetadata.setterName(field), field.getType()));
+    }
+
+    /**
+     * Build the reference of a field, checking its column
+     */
+    static ReferenceMetadata of(Field field, EntityMetadata owner) {
+        String columnName = field.getDeclaredAnnotation(Reference.class).columnName();
+        ColumnMetadata column = owner.getColumn(columnName);
+        if (column == null || !column.isForeignKey()) {
+            throw new IllegalArgumentException("@Reference " + field.getName() + " of " + owner.getType().getName() +
+                    " must name a @ForeignKey column, got \"" + columnName + "\"");
+        }
+        return new ReferenceMetadata(field, column);
+    }
+
+    /**
+     * @return the field name, used to ask for the reference in fetch plans
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return the foreign key column of the owning entity
+     */
+    public ColumnMetadata getColumn() {
+        return column;
+    }
+
+    public Class<?> getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * @return true if the field is a Lazy holder
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * @return metadata of the referenced class, resolved on use so that classes may reference each other
+     */
+    public EntityMetadata getTarget() {
+        return EntityMetadata.of(targetType);
+    }
+
+    /**
+     * @return the referenced column of the target, its primary key when @ForeignKey names none
+     */
+    public ColumnMetadata getTargetColumn() {
+        EntityMetadata target = getTarget();
+        String name = column.getForeignColumn();
+        ColumnMetadata targetColumn = name == null || name.isEmpty() ? target.getPrimaryKey() : target.getColumn(name);
+        if (targetColumn == null) {
+            throw new IllegalStateException(targetType.getName() + " has no column " + name);
+        }
+        return targetColumn;
+    }
+
+    public Object get(Object entity) {
+        return accessor.get(entity);
+    }
+
+    /**
+     * Set the target of an entity, wrapped in a loaded holder for a lazy reference
+     */
+    public void set(Object entity, Object target) {
+        accessor.set(entity, lazy ? Lazy.loaded(column.get(entity), target) : target);
+    }
+
+    /**
+     * Set a pending holder of a lazy reference
+     */
+    void setPending(Object entity, Lazy.Batch batch) {
+        accessor.set(entity, batch.add(column.get(entity)));
+    }
+
+    private static Class<?> lazyType(Field field) {
+        Type type = field.getGenericType();
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        throw new IllegalArgumentException("@Reference " + field.getName() + " must be a Lazy of a POJO class");
+    }
+
+    private static Method findMethod(Field field, String name, Class<?>... parameterTypes) {
+        try {
+            return field.getDeclaringClass().getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceMetadata{" +
+                "name='" + name + '\'' +
+                ", column=" + column.getName() +
+                ", target=" + targetType.getName() +
+                '}';
+    }
+}
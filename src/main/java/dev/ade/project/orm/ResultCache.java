@@ -0,0 +1,214 @@
+package dev.ade.project.orm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Process-wide cache of query results, keyed by SQL and parameter values, for the
+ * AdeOrm instances with setResultCaching(true). Each result is tagged with the tables
+ * it reads and dropped by any write through AdeOrm to one of them, again when the
+ * writing transaction ends, and a query started before a write does not cache its rows.
+ * The cache is bounded by the estimated heap size of the cached rows, least recently
+ * used results are evicted first. Results are replayed as new ResultSets, so every hit
+ * decodes new objects.
+ */
+public final class ResultCache {
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<String, Set<Key>> BY_TABLE = new HashMap<>();
+    private static long maxBytes = defaultMaxBytes();
+    private static long bytes;
+    private static long invalidations;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    private ResultCache() {}
+
+    private static final class Key {
+        private final String sql;
+        private final List<Object> values;
+
+        private Key(String sql, Object[] values) {
+            this.sql = sql;
+            this.values = Arrays.asList(values.clone());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return sql.equals(key.sql) && values.equals(key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, values);
+        }
+    }
+
+    private static final class Entry {
+        private final CachedResult result;
+        private final Set<String> tables;
+
+        private Entry(CachedResult result, Set<String> tables) {
+            this.result = result;
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * @return the cached result of a query, null on a miss
+     */
+    static synchronized CachedResult get(String sql, Object[] values) {
+        Entry entry = ENTRIES.get(new Key(sql, values));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * @return a stamp to take before running a query, see put
+     */
+    static synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Cache the result of a query, unless a table was written since the query started
+     * or the result alone is larger than the cache
+     *
+     * @param tables tables read by the query
+     * @param stamp stamp taken before the query ran
+     */
+    static synchronized void put(String sql, Object[] values, Collection<String> tables, CachedResult result,
+                                 long stamp) {
+        if (stamp != invalidations || result.getBytes() > maxBytes) {
+            return;
+        }
+        Key key = new Key(sql, values);
+        Set<String> tags = new HashSet<>();
+        for (String table : tables) {
+            tags.add(table.toLowerCase());
+        }
+        remove(key);
+        ENTRIES.put(key, new Entry(result, tags));
+        bytes += result.getBytes();
+        for (String table : tags) {
+            BY_TABLE.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+        }
+        trim();
+    }
+
+    /**
+     * Drop the results reading a table after a write
+     */
+    static synchronized void invalidate(String tableName) {
+        invalidations++;
+        Set<Key> keys = BY_TABLE.remove(tableName.toLowerCase());
+        if (keys != null) {
+            for (Key key : keys) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Evict the least recently used results until the cache fits in maxBytes
+     */
+    private static void trim() {
+        Iterator<Map.Entry<Key, Entry>> eldest = ENTRIES.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Key, Entry> victim = eldest.next();
+            eldest.remove();
+            untag(victim.getKey(), victim.getValue());
+            evictions++;
+        }
+    }
+
+    private static void remove(Key key) {
+        Entry entry = ENTRIES.remove(key);
+        if (entry != null) {
+            untag(key, entry);
+        }
+    }
+
+    private static void untag(Key key, Entry entry) {
+        bytes -= entry.result.getBytes();
+        for (String table : entry.tables) {
+            Set<Key> keys = BY_TABLE.get(table);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    BY_TABLE.remove(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop every result, e.g. after the tables were changed outside AdeOrm
+     */
+    public static synchronized void clear() {
+        invalidations++;
+        ENTRIES.clear();
+        BY_TABLE.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @param maxBytes estimated heap size the cached results may take, evicting the
+     *                 least recently used results when it shrinks
+     */
+    public static synchronized void setMaxBytes(long maxBytes) {
+        ResultCache.maxBytes = Math.max(0, maxBytes);
+        trim();
+    }
+
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return estimated heap size of the cached results
+     */
+    public static synchronized long getBytes() {
+        return bytes;
+    }
+
+    public static synchronized int size() {
+        return ENTRIES.size();
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    public static synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static long defaultMaxBytes() {
+        String value = System.getenv("RESULT_CACHE_MAX_BYTES");
+        try {
+            return value == null ? 32L << 20 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 32L << 20;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator decoding one row of an open ResultSet per call to next.
+ * Rows are fetched from the database fetchSize at a time, so memory use does not
+ * grow with the size of the table. Closes the statement and gives the connection
+ * back once the last row is read or close is called.
+ */
+public class ResultIterator implements Iterator<Object>, AutoCloseable {
+    private final Connection conn;
+    private final boolean ownsConnection;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final RowDecoder decoder;
+    private boolean fetched;
+    private boolean hasRow;
+    private boolean closed;
+
+    /**
+     * @param conn connection the statement was prepared on
+     * @param ownsConnection true to end the read transaction and close the connection on close
+     * @param ps statement to execute
+     * @param metadata metadata of the entity class to decode rows into
+     */
+    ResultIterator(Connection conn, boolean ownsConnection, PreparedStatement ps, EntityMetadata metadata)
+            throws SQLException {
+        this.conn = conn;
+        this.ownsConnection = ownsConnection;
+        this.ps = ps;
+        try {
+            this.rs = ps.executeQuery();
+            this.decoder = RowDecoder.of(metadata, rs);
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fetched && !closed) {
+            try {
+                hasRow = rs.next();
+            } catch (SQLException e) {
+                close();
+                throw new DataAccessException("Failed to fetch the next row", e);
+            }
+            fetched = true;
+            if (!hasRow) {
+                close();
+            }
+        }
+        return hasRow && fetched;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return decoder.decode(rs);
+        } catch (SQLException e) {
+            close();
+            throw new DataAccessException("Failed to decode the row", e);
+        }
+    }
+
+    /**
+     * @return a sequential Stream over the remaining rows, closing the stream closes this iterator
+     */
+    public Stream<Object> stream() {
+        Spliterator<Object> spliterator = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hasRow = false;
+        try {
+            ps.close();
+            if (ownsConnection) {
+                conn.commit();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to close the result", e);
+        } finally {
+            if (ownsConnection) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package dev.ade.project.orm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the rows of a ResultSet into entities. Column indexes and a reader
+ * matching each field type are resolved once per ResultSet, every row is then
+ * read with the typed getters (getInt, getLong, getTimestamp, ...) straight
+ * into the entity, without going through String.
+ * NULL columns leave the field at its default value.
+ * Lazy @Reference fields get a holder of the foreign key read from the row, the holders
+ * of one decoder are loaded together on first use.
+ */
+public final class RowDecoder {
+
+    /**
+     * Reads one column of the current row into a property of an entity
+     */
+    interface ColumnReader {
+        void read(ResultSet rs, int index, Object entity, PropertyAccessor accessor) throws SQLException;
+    }
+
+    private final EntityMetadata metadata;
+    private final int[] indexes;
+    private final PropertyAccessor[] accessors;
+    private final ColumnReader[] readers;
+    private final Lazy.Batches lazyBatches;
+
+    private RowDecoder(EntityMetadata metadata, int[] indexes, PropertyAccessor[] accessors, ColumnReader[] readers) {
+        this.metadata = metadata;
+        this.indexes = indexes;
+        this.accessors = accessors;
+        this.readers = readers;
+        List<ReferenceMetadata> lazy = new ArrayList<>();
+        for (ReferenceMetadata reference : metadata.getReferences()) {
+            if (reference.isLazy() && Arrays.asList(accessors).contains(reference.getColumn().getAccessor())) {
+                lazy.add(reference);
+            }
+        }
+        this.lazyBatches = new Lazy.Batches(lazy);
+    }
+
+    /**
+     * Create a decoder for the entity columns present in the ResultSet
+     *
+     * @param metadata metadata of the entity class
+     * @param rs a ResultSet before its first row
+     * @return a decoder bound to the ResultSet layout
+     */
+    public static RowDecoder of(EntityMetadata metadata, ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        List<ColumnMetadata> columns = metadata.getColumns();
+        int[] indexes = new int[columns.size()];
+        PropertyAccessor[] accessors = new PropertyAccessor[columns.size()];
+        ColumnReader[] readers = new ColumnReader[columns.size()];
+        int n = 0;
+        for (ColumnMetadata column : columns) {
+            int index = findColumn(rsmd, column.getName(), null);
+            if (index > 0) {
+                indexes[n] = index;
+                accessors[n] = column.getAccessor();
+                readers[n] = readerFor(column.getType());
+                n++;
+            }
+        }
+        return new RowDecoder(metadata, trim(indexes, n), trim(accessors, n), trim(readers, n));
+    }
+
+    /**
+     * Create a decoder for columns selected one after the other, as in a join
+     * selecting the columns of each table in turn
+     *
+     * @param metadata metadata of the entity class
+     * @param columns the selected columns of the entity, in select order
+     * @param firstIndex ResultSet index of the first of them
+     * @return a decoder reading the columns by position
+     */
+    static RowDecoder at(EntityMetadata metadata, List<ColumnMetadata> columns, int firstIndex) {
+        int[] indexes = new int[columns.size()];
+        PropertyAccessor[] accessors = new PropertyAccessor[columns.size()];
+        ColumnReader[] readers = new ColumnReader[columns.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = firstIndex + i;
+            accessors[i] = columns.get(i).getAccessor();
+            readers[i] = readerFor(columns.get(i).getType());
+        }
+        return new RowDecoder(metadata, indexes, accessors, readers);
+    }
+
+    /**
+     * Decode the current row into a new entity
+     *
+     * @param rs ResultSet positioned on a row
+     * @return a new entity holding the row values
+     */
+    public Object decode(ResultSet rs) throws SQLException {
+        Object entity;
+        try {
+            entity = metadata.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new SQLException("Cannot instantiate " + metadata.getType().getName(), e);
+        }
+        decodeInto(entity, rs);
+        return entity;
+    }
+
+    /**
+     * Decode the current row into an existing entity
+     *
+     * @param entity entity to fill
+     * @param rs ResultSet positioned on a row
+     */
+    public void decodeInto(Object entity, ResultSet rs) throws SQLException {
+        for (int i = 0; i < indexes.length; i++) {
+            readers[i].read(rs, indexes[i], entity, accessors[i]);
+        }
+        lazyBatches.setPending(entity);
+    }
+
+    /**
+     * Resolve the ResultSet index of each requested column once
+     *
+     * @param rs a ResultSet
+     * @param columnNames column names, optionally qualified with a table name or alias.
+     *                    A qualified name matches the column of its table first, so the
+     *                    same column name of two joined tables is told apart.
+     * @return 1-based column indexes in the order of the names
+     */
+    public static int[] columnIndexes(ResultSet rs, List<String> columnNames) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int[] indexes = new int[columnNames.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            String name = columnNames.get(i);
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                int index = findColumn(rsmd, name, null);
+                indexes[i] = index > 0 ? index : rs.findColumn(name);
+                continue;
+            }
+            String label = name.substring(dot + 1);
+            int index = findColumn(rsmd, label, name.substring(0, dot));
+            if (index == 0) {
+                try {
+                    // drivers resolving "alias.column" themselves
+                    index = rs.findColumn(name);
+                } catch (SQLException e) {
+                    index = findColumn(rsmd, label, null);
+                    if (index == 0) {
+                        throw e;
+                    }
+                }
+            }
+            indexes[i] = index;
+        }
+        return indexes;
+    }
+
+    /**
+     * Read the columns of the current row as text
+     *
+     * @param rs ResultSet positioned on a row
+     * @param indexes column indexes from columnIndexes
+     * @return a list of column values
+     */
+    public static List<Object> readColumns(ResultSet rs, int[] indexes) throws SQLException {
+        List<Object> record = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            record.add(rs.getString(index));
+        }
+        return record;
+    }
+
+    /**
+     * Read one column of the current row as a value of the given type
+     *
+     * @param rs ResultSet positioned on a row
+     * @param index column index
+     * @param type field type, primitives are returned boxed
+     * @return the value, null for SQL NULL
+     */
+    static Object readValue(ResultSet rs, int index, Class<?> type) throws SQLException {
+        Object value;
+        if (type == int.class || type == Integer.class) {
+            value = rs.getInt(index);
+        } else if (type == long.class || type == Long.class) {
+            value = rs.getLong(index);
+        } else if (type == double.class || type == Double.class) {
+            value = rs.getDouble(index);
+        } else if (type == boolean.class || type == Boolean.class) {
+            value = rs.getBoolean(index);
+        } else if (type == short.class || type == Short.class) {
+            value = rs.getShort(index);
+        } else if (type == byte.class || type == Byte.class) {
+            value = rs.getByte(index);
+        } else if (type == float.class || type == Float.class) {
+            value = rs.getFloat(index);
+        } else if (type == char.class || type == Character.class) {
+            String text = rs.getString(index);
+            return text == null || text.isEmpty() ? null : text.charAt(0);
+        } else if (type == String.class) {
+            return rs.getString(index);
+        } else if (type == BigDecimal.class) {
+            return rs.getBigDecimal(index);
+        } else if (type == Timestamp.class) {
+            return rs.getTimestamp(index);
+        } else if (type == Date.class) {
+            return rs.getDate(index);
+        } else if (type == LocalDateTime.class) {
+            Timestamp timestamp = rs.getTimestamp(index);
+            return timestamp == null ? null : timestamp.toLocalDateTime();
+        } else if (type == LocalDate.class) {
+            Date date = rs.getDate(index);
+            return date == null ? null : date.toLocalDate();
+        } else {
+            return rs.getObject(index, type);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * @param table table the column must come from, null for any table
+     * @return index of the first column with the label, 0 if there is none
+     */
+    private static int findColumn(ResultSetMetaData rsmd, String name, String table) throws SQLException {
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            if (rsmd.getColumnLabel(i).equalsIgnoreCase(name) &&
+                    (table == null || table.equalsIgnoreCase(rsmd.getTableName(i)))) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    static ColumnReader readerFor(Class<?> type) {
+        if (type == int.class) {
+            return (rs, i, e, a) -> {
+                int v = rs.getInt(i);
+                if (!rs.wasNull()) a.setInt(e, v);
+            };
+        }
+        if (type == long.class) {
+            return (rs, i, e, a) -> {
+                long v = rs.getLong(i);
+                if (!rs.wasNull()) a.setLong(e, v);
+            };
+        }
+        if (type == double.class) {
+            return (rs, i, e, a) -> {
+                double v = rs.getDouble(i);
+                if (!rs.wasNull()) a.setDouble(e, v);
+            };
+        }
+        if (type == boolean.class) {
+            return (rs, i, e, a) -> {
+                boolean v = rs.getBoolean(i);
+                if (!rs.wasNull()) a.setBoolean(e, v);
+            };
+        }
+        if (type == short.class) {
+            return (rs, i, e, a) -> {
+                short v = rs.getShort(i);
+                if (!rs.wasNull()) a.set(e, v);
+            };
+        }
+        if (type == byte.class) {
+            return (rs, i, e, a) -> {
+                byte v = rs.getByte(i);
+                if (!rs.wasNull()) a.set(e, v);
+            };
+        }
+        if (type == float.class) {
+            return (rs, i, e, a) -> {
+                float v = rs.getFloat(i);
+                if (!rs.wasNull()) a.set(e, v);
+            };
+        }
+        if (type == char.class || type == Character.class) {
+            return (rs, i, e, a) -> {
+                String v = rs.getString(i);
+                if (v != null && !v.isEmpty()) a.set(e, v.charAt(0));
+            };
+        }
+        if (type == String.class) {
+            return (rs, i, e, a) -> setIfPresent(a, e, rs.getString(i));
+        }
+        if (type == BigDecimal.class) {
+            return (rs, i, e, a) -> setIfPresent(a, e, rs.getBigDecimal(i));
+        }
+        if (type == Timestamp.class) {
+            return (rs, i, e, a) -> setIfPresent(a, e, rs.getTimestamp(i));
+        }
+        if (type == Date.class) {
+            return (rs, i, e, a) -> setIfPresent(a, e, rs.getDate(i));
+        }
+        if (type == LocalDateTime.class) {
+            return (rs, i, e, a) -> {
+                Timestamp v = rs.getTimestamp(i);
+                if (v != null) a.set(e, v.toLocalDateTime());
+            };
+        }
+        if (type == LocalDate.class) {
+            return (rs, i, e, a) -> {
+                Date v = rs.getDate(i);
+                if (v != null) a.set(e, v.toLocalDate());
+            };
+        }
+        return (rs, i, e, a) -> setIfPresent(a, e, rs.getObject(i, type));
+    }
+
+    private static void setIfPresent(PropertyAccessor accessor, Object entity, Object value) {
+        if (value != null) {
+            accessor.set(entity, value);
+        }
+    }
+
+    private static int[] trim(int[] array, int n) {
+        if (array.length == n) {
+            return array;
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(array, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    private static <T> T[] trim(T[] array, int n) {
+        return array.length == n ? array : Arrays.copyOf(array, n);
+    }
+}
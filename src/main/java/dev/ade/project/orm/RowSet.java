@@ -0,0 +1,285 @@
+package dev.ade.project.orm;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rows of a query stored column by column: int, long, double and boolean columns
+ * live in primitive arrays, other columns in an Object array, with a bitmap of the
+ * null cells. Reading a row allocates nothing, unlike a list of boxed or String cells.
+ */
+public final class RowSet {
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int BOOLEAN = 3;
+    private static final int OBJECT = 4;
+
+    private final List<String> columnNames;
+    private final int[] kinds;
+    private final Object[] columns;
+    private final BitSet[] nulls;
+    private int size;
+    private int capacity = 16;
+
+    private RowSet(List<String> columnNames, int[] kinds) {
+        this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+        this.kinds = kinds;
+        this.columns = new Object[kinds.length];
+        this.nulls = new BitSet[kinds.length];
+        for (int c = 0; c < kinds.length; c++) {
+            columns[c] = newArray(kinds[c], capacity);
+            nulls[c] = new BitSet();
+        }
+    }
+
+    /**
+     * Create an empty row set for the requested columns of a ResultSet, choosing
+     * the storage of each column from its SQL type
+     */
+    static RowSet of(ResultSet rs, List<String> columnNames, int[] indexes) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int[] kinds = new int[indexes.length];
+        for (int c = 0; c < indexes.length; c++) {
+            kinds[c] = kindOf(rsmd.getColumnType(indexes[c]));
+        }
+        return new RowSet(columnNames, kinds);
+    }
+
+    /**
+     * Append the current row of the ResultSet
+     */
+    void add(ResultSet rs, int[] indexes) throws SQLException {
+        if (size == capacity) {
+            grow();
+        }
+        for (int c = 0; c < kinds.length; c++) {
+            int i = indexes[c];
+            switch (kinds[c]) {
+                case INT:
+                    ((int[]) columns[c])[size] = rs.getInt(i);
+                    break;
+                case LONG:
+                    ((long[]) columns[c])[size] = rs.getLong(i);
+                    break;
+                case DOUBLE:
+                    ((double[]) columns[c])[size] = rs.getDouble(i);
+                    break;
+                case BOOLEAN:
+                    ((boolean[]) columns[c])[size] = rs.getBoolean(i);
+                    break;
+                default:
+                    ((Object[]) columns[c])[size] = rs.getObject(i);
+            }
+            if (rs.wasNull()) {
+                nulls[c].set(size);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @param columnName a requested column, with or without its table qualifier
+     * @return position of the column
+     */
+    public int columnIndex(String columnName) {
+        String name = columnName.substring(columnName.lastIndexOf('.') + 1);
+        for (int c = 0; c < columnNames.size(); c++) {
+            String candidate = columnNames.get(c);
+            if (candidate.equalsIgnoreCase(columnName) ||
+                    candidate.substring(candidate.lastIndexOf('.') + 1).equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException(columnName + " is not a column of the row set");
+    }
+
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return nulls[column].get(row);
+    }
+
+    public int getInt(int row, int column) {
+        checkRow(row);
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return (int) ((long[]) columns[column])[row];
+            case DOUBLE:
+                return (int) ((double[]) columns[column])[row];
+            default:
+                return number(row, column).intValue();
+        }
+    }
+
+    public long getLong(int row, int column) {
+        checkRow(row);
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return ((long[]) columns[column])[row];
+            case DOUBLE:
+                return (long) ((double[]) columns[column])[row];
+            default:
+                return number(row, column).longValue();
+        }
+    }
+
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return ((long[]) columns[column])[row];
+            case DOUBLE:
+                return ((double[]) columns[column])[row];
+            default:
+                return number(row, column).doubleValue();
+        }
+    }
+
+    public boolean getBoolean(int row, int column) {
+        checkRow(row);
+        if (kinds[column] == BOOLEAN) {
+            return ((boolean[]) columns[column])[row];
+        }
+        Object value = getObject(row, column);
+        return value instanceof Boolean ? (Boolean) value : value != null && getLong(row, column) != 0;
+    }
+
+    /**
+     * @return the cell as text, null for a null cell
+     */
+    public String getString(int row, int column) {
+        Object value = getObject(row, column);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return the cell boxed, null for a null cell
+     */
+    public Object getObject(int row, int column) {
+        checkRow(row);
+        if (nulls[column].get(row)) {
+            return null;
+        }
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return ((long[]) columns[column])[row];
+            case DOUBLE:
+                return ((double[]) columns[column])[row];
+            case BOOLEAN:
+                return ((boolean[]) columns[column])[row];
+            default:
+                return ((Object[]) columns[column])[row];
+        }
+    }
+
+    public Object getObject(int row, String columnName) {
+        return getObject(row, columnIndex(columnName));
+    }
+
+    /**
+     * @return the cells of a row, boxed
+     */
+    public List<Object> getRow(int row) {
+        Object[] cells = new Object[kinds.length];
+        for (int c = 0; c < cells.length; c++) {
+            cells[c] = getObject(row, c);
+        }
+        return Arrays.asList(cells);
+    }
+
+    private Number number(int row, int column) {
+        Object value = getObject(row, column);
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        return Double.valueOf(value.toString());
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    private void grow() {
+        capacity = size * 2;
+        for (int c = 0; c < kinds.length; c++) {
+            Object grown = newArray(kinds[c], capacity);
+            System.arraycopy(columns[c], 0, grown, 0, size);
+            columns[c] = grown;
+        }
+    }
+
+    private static Object newArray(int kind, int capacity) {
+        switch (kind) {
+            case INT:
+                return new int[capacity];
+            case LONG:
+                return new long[capacity];
+            case DOUBLE:
+                return new double[capacity];
+            case BOOLEAN:
+                return new boolean[capacity];
+            default:
+                return new Object[capacity];
+        }
+    }
+
+    private static int kindOf(int sqlType) {
+        switch (sqlType) {
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return INT;
+            case Types.BIGINT:
+                return LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return DOUBLE;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return BOOLEAN;
+            default:
+                return OBJECT;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RowSet{columns=" + columnNames + ", size=" + size + '}';
+    }
+}
@@ -0,0 +1,288 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.DataAccessException;
+import dev.ade.project.util.ConnectionUtil;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A transaction bound to the thread that began it. The session owns one pooled
+ * connection, borrowed on first use with autoCommit off, and every AdeOrm used on
+ * that thread runs its statements on it until the session is closed.
+ * AdeOrm instances hold no transaction state and can be shared between threads.
+ * The entities read in the session are kept in its identity map, one instance per row,
+ * until the session is rolled back or closed. The rows it writes are invalidated in the
+ * entity and result caches at once and again when the transaction ends, and the session
+ * reads the tables it wrote from the database.
+ * A write-behind session queues add, update and delete of entities in a UnitOfWork and
+ * sends them in a few batches when it commits, or before any other statement it runs.
+ * A begin on a thread whose session is active joins it: commit and close of a joined
+ * scope leave the transaction to the outermost scope, and its rollback marks the
+ * transaction rollback only.
+ */
+public final class Session implements AutoCloseable {
+    private static final ThreadLocal<Session> CURRENT = new ThreadLocal<>();
+
+    private final Thread owner = Thread.currentThread();
+    private Connection connection;
+    private final IdentityMap identityMap = new IdentityMap();
+    // written keys by lower case table name, a null set when any row may have changed
+    private final Map<String, Set<Object>> writes = new HashMap<>();
+    private UnitOfWork unitOfWork;
+    private boolean flushing;
+    // scopes that joined the session and have not closed yet
+    private int joined;
+    private volatile boolean rollbackOnly;
+    private volatile boolean closed;
+
+    private Session() {}
+
+    /**
+     * Begin a transaction on the current thread, or join the one already active. Every
+     * begin must be paired with a close.
+     *
+     * @return the session of the current thread
+     */
+    public static Session begin() {
+        Session session = current();
+        if (session == null) {
+            session = new Session();
+            CURRENT.set(session);
+        } else {
+            session.joined++;
+        }
+        return session;
+    }
+
+    /**
+     * @return the session of the current thread, null outside a transaction
+     */
+    public static Session current() {
+        Session session = CURRENT.get();
+        if (session != null && session.closed) {
+            // closed from another thread
+            CURRENT.remove();
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Get the connection of the transaction. Closing the returned connection leaves
+     * the transaction open.
+     *
+     * @return the transaction connection
+     * @throws DataAccessException if no connection can be opened or the queued writes fail
+     */
+    public Connection getConnection() {
+        if (closed) {
+            throw new IllegalStateException("Session is closed");
+        }
+        try {
+            connection();
+        } catch (SQLException e) {
+            throw new DataAccessException("Cannot open session connection", e);
+        }
+        if (unitOfWork != null && unitOfWork.hasPending() && !flushing) {
+            try {
+                flush();
+            } catch (SQLException e) {
+                throw new DataAccessException("Queued writes of the session failed", e);
+            }
+        }
+        return ConnectionUtil.unclosable(connection);
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            try {
+                connection = ConnectionUtil.getDataSource().getConnection();
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("JDBC driver not found", e);
+            }
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    /**
+     * Queue add, update and delete of entities until the session flushes, see UnitOfWork.
+     * Queued calls return before the row is written: update returns true unless the row
+     * is queued for delete, and generated keys are set when the insert is flushed.
+     *
+     * @param writeBehind false to flush the queued writes and run the next ones at once
+     */
+    public void setWriteBehind(boolean writeBehind) throws SQLException {
+        if (writeBehind) {
+            if (unitOfWork == null) {
+                unitOfWork = new UnitOfWork(this);
+            }
+        } else {
+            flush();
+            unitOfWork = null;
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return unitOfWork != null;
+    }
+
+    /**
+     * @return the queue of a write-behind session, null otherwise
+     */
+    UnitOfWork getUnitOfWork() {
+        return unitOfWork;
+    }
+
+    /**
+     * Send the queued writes of a write-behind session, a failure marks the transaction
+     * rollback only
+     */
+    public void flush() throws SQLException {
+        if (unitOfWork == null || flushing) {
+            return;
+        }
+        flushing = true;
+        try {
+            unitOfWork.flush(connection());
+        } catch (SQLException | RuntimeException e) {
+            rollbackOnly = true;
+            throw e;
+        } finally {
+            flushing = false;
+        }
+    }
+
+    IdentityMap getIdentityMap() {
+        return identityMap;
+    }
+
+    /**
+     * Record a write of the transaction, invalidated in the caches when it ends
+     *
+     * @param tableName written table
+     * @param key primary key of the written row, null when any row may have changed
+     */
+    void written(String tableName, Object key) {
+        String table = tableName.toLowerCase();
+        if (key == null) {
+            writes.put(table, null);
+        } else if (!writes.containsKey(table) || writes.get(table) != null) {
+            writes.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * @return true if the transaction wrote the table, its rows are then read from the database
+     */
+    boolean hasWritten(String tableName) {
+        return tableName != null && writes.containsKey(tableName.toLowerCase());
+    }
+
+    private void invalidateWrites() {
+        writes.forEach((table, keys) -> {
+            ResultCache.invalidate(table);
+            if (keys == null) {
+                EntityCache.invalidate(table, null);
+            } else {
+                keys.forEach(key -> EntityCache.invalidate(table, key));
+            }
+        });
+        writes.clear();
+    }
+
+    /**
+     * Mark the transaction as failed, commit then refuses to commit it
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    /**
+     * Commit the work done so far, sending the queued writes of a write-behind session first.
+     * In a joined scope only the queued writes are sent, the outermost scope commits.
+     *
+     * @throws SQLException when the transaction is marked rollback only or the commit fails
+     */
+    public void commit() throws SQLException {
+        if (rollbackOnly) {
+            throw new SQLException("Transaction has a failed statement and can only be rolled back");
+        }
+        flush();
+        if (joined > 0) {
+            return;
+        }
+        if (connection != null) {
+            connection.commit();
+        }
+        invalidateWrites();
+    }
+
+    /**
+     * Roll back the work done so far, the session stays usable with an empty identity map.
+     * In a joined scope the transaction is marked rollback only instead.
+     */
+    public void rollback() throws SQLException {
+        if (joined > 0) {
+            rollbackOnly = true;
+            return;
+        }
+        rollbackOnly = false;
+        identityMap.clear();
+        if (unitOfWork != null) {
+            unitOfWork.clear();
+        }
+        try {
+            if (connection != null) {
+                connection.rollback();
+            }
+        } finally {
+            invalidateWrites();
+        }
+    }
+
+    public boolean isActive() {
+        return !closed;
+    }
+
+    /**
+     * Give the connection back to the pool, rolling back uncommitted work, and
+     * unbind the session from its thread. Closing a joined scope only leaves it.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (joined > 0) {
+            joined--;
+            return;
+        }
+        closed = true;
+        identityMap.clear();
+        if (unitOfWork != null) {
+            unitOfWork.clear();
+        }
+        invalidateWrites();
+        if (Thread.currentThread() == owner && CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            connection = null;
+        }
+    }
+}
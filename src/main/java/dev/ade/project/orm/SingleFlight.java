@@ -0,0 +1,95 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent identical lookups into one database call: the first caller of a
+ * key runs the lookup, callers arriving while it runs wait for its result instead of
+ * running their own. Keys are coordinated with a ConcurrentHashMap of in-flight futures,
+ * so lookups of different keys never wait on each other. Waiting callers receive a copy
+ * of the result, never the objects handed to the first caller.
+ */
+public final class SingleFlight {
+    private static final ConcurrentMap<Object, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final LongAdder CALLS = new LongAdder();
+    private static final LongAdder COLLAPSED = new LongAdder();
+
+    private SingleFlight() {}
+
+    /**
+     * A lookup run by the first caller of a key
+     */
+    interface Lookup<T> {
+        T run() throws ArgumentFormatException;
+    }
+
+    /**
+     * @param key identifies the lookup: operation, class and arguments
+     * @param lookup the database call
+     * @param copy copies the result for a waiting caller
+     * @return the result of the lookup, or of the identical lookup already running
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T run(Object key, Lookup<T> lookup, UnaryOperator<T> copy) throws ArgumentFormatException {
+        CALLS.increment();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = IN_FLIGHT.putIfAbsent(key, mine);
+        if (running != null) {
+            COLLAPSED.increment();
+            try {
+                T result = (T) running.get();
+                return result == null ? null : copy.apply(result);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ArgumentFormatException("Interrupted while waiting for an identical lookup", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new ArgumentFormatException(cause.getMessage(), (Exception) cause);
+            }
+        }
+        try {
+            T result = lookup.run();
+            mine.complete(result);
+            return result;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return number of lookups asked for
+     */
+    public static long getCalls() {
+        return CALLS.sum();
+    }
+
+    /**
+     * @return number of lookups answered by an identical lookup already running
+     */
+    public static long getCollapsed() {
+        return COLLAPSED.sum();
+    }
+
+    /**
+     * @return number of lookups running now
+     */
+    public static int getInFlight() {
+        return IN_FLIGHT.size();
+    }
+}
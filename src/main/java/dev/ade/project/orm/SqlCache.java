@@ -0,0 +1,98 @@
+package dev.ade.project.orm;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Generated SQL strings per entity class, operation and set of columns,
+ * so each statement shape is only built once. Together with the statement
+ * cache of the connection pool, the same String leads to the same prepared statement.
+ */
+public final class SqlCache {
+    private static final ConcurrentMap<Key, String> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private SqlCache() {}
+
+    /**
+     * @param type entity class
+     * @param operation name of the statement kind, e.g. "update"
+     * @param columns indexes of the entity columns the statement uses
+     * @param builder builds the SQL on a miss
+     * @return the cached SQL
+     */
+    static String get(Class<?> type, String operation, BitSet columns, Supplier<String> builder) {
+        return lookup(new Key(type, operation, columns), builder);
+    }
+
+    /**
+     * @param type entity class
+     * @param operation name of the statement kind, e.g. "get"
+     * @param shape column names in the order the statement uses them, or any value
+     *              whose equals tells statements of the same shape apart; it is kept
+     *              for the life of the process, so it must not hold statement values
+     * @param builder builds the SQL on a miss
+     * @return the cached SQL
+     */
+    static String get(Class<?> type, String operation, Object shape, Supplier<String> builder) {
+        return lookup(new Key(type, operation, shape), builder);
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * @return number of lookups that built their SQL
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    private static String lookup(Key key, Supplier<String> builder) {
+        String sql = CACHE.get(key);
+        if (sql != null) {
+            HITS.incrementAndGet();
+            return sql;
+        }
+        MISSES.incrementAndGet();
+        return CACHE.computeIfAbsent(key, k -> builder.get());
+    }
+
+    private static final class Key {
+        private final Class<?> type;
+        private final String operation;
+        private final Object columns;
+
+        private Key(Class<?> type, String operation, Object columns) {
+            this.type = type;
+            this.operation = operation;
+            this.columns = columns;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return type == key.type && operation.equals(key.operation) && Objects.equals(columns, key.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, operation, columns);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package dev.ade.project.orm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes of a write-behind Session, queued by add, update and delete of an entity and
+ * sent when the session flushes: at commit, or before any other statement of the
+ * session so that it reads its own writes. Writes to one row collapse into one: an
+ * update of a row already queued is dropped, as column values are read at flush, and a
+ * delete cancels the queued insert or update of its row.
+ * A flush sends the inserts of each class as JDBC batches, the tables referenced by a
+ * @ForeignKey before the tables referencing them, then the updates grouped by changed
+ * columns, then the deletes with the referencing tables first.
+ */
+final class UnitOfWork {
+    private final Session session;
+    // queued writes by row, in the order they were first queued
+    private final Map<Object, Write> writes = new LinkedHashMap<>();
+
+    private enum Operation { INSERT, UPDATE, DELETE }
+
+    private static final class Write {
+        private final AdeOrm orm;
+        private final EntityMetadata metadata;
+        private Operation operation;
+        private Object entity;
+
+        private Write(AdeOrm orm, EntityMetadata metadata, Operation operation, Object entity) {
+            this.orm = orm;
+            this.metadata = metadata;
+            this.operation = operation;
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * Queued writes of one class
+     */
+    private static final class Group {
+        private final AdeOrm orm;
+        private final EntityMetadata metadata;
+        private final List<Object> inserts = new ArrayList<>();
+        private final List<Object> updates = new ArrayList<>();
+        private final List<Object> deletes = new ArrayList<>();
+
+        private Group(AdeOrm orm, EntityMetadata metadata) {
+            this.orm = orm;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * Key of a row whose primary key is generated at insert, the entity itself
+     */
+    private static final class NewRow {
+        private final Object entity;
+
+        private NewRow(Object entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NewRow && ((NewRow) o).entity == entity;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(entity);
+        }
+    }
+
+    UnitOfWork(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Queue the insert of an entity. A row already queued is flushed first, so the insert
+     * fails at commit as it would have failed at once.
+     *
+     * @param generatedKey true if the database generates the primary key, it is written
+     *                     back into the entity at flush
+     */
+    void add(AdeOrm orm, EntityMetadata metadata, Object entity, boolean generatedKey) throws SQLException {
+        Object key = generatedKey ? new NewRow(entity) : rowKey(metadata, entity);
+        if (writes.containsKey(key)) {
+            session.flush();
+        }
+        writes.put(key, new Write(orm, metadata, Operation.INSERT, entity));
+        session.written(metadata.getTableName(), generatedKey ? null : metadata.getPrimaryKey().get(entity));
+    }
+
+    /**
+     * Queue the update of an entity
+     *
+     * @return false if the row is queued for delete
+     */
+    boolean update(AdeOrm orm, EntityMetadata metadata, Object entity) {
+        Object key = keyOf(metadata, entity);
+        Write write = writes.get(key);
+        if (write == null) {
+            writes.put(key, new Write(orm, metadata, Operation.UPDATE, entity));
+        } else if (write.operation == Operation.DELETE) {
+            return false;
+        } else {
+            // the last instance queued for the row is written
+            write.entity = entity;
+        }
+        session.written(metadata.getTableName(), metadata.getPrimaryKey().get(entity));
+        return true;
+    }
+
+    /**
+     * Queue the delete of an entity, or drop its queued insert
+     */
+    void delete(AdeOrm orm, EntityMetadata metadata, Object entity) {
+        Object key = keyOf(metadata, entity);
+        Write write = writes.get(key);
+        if (write == null) {
+            writes.put(key, new Write(orm, metadata, Operation.DELETE, entity));
+        } else if (write.operation == Operation.INSERT) {
+            writes.remove(key);
+        } else {
+            write.operation = Operation.DELETE;
+            write.entity = entity;
+        }
+        session.written(metadata.getTableName(), metadata.getPrimaryKey().get(entity));
+    }
+
+    boolean hasPending() {
+        return !writes.isEmpty();
+    }
+
+    /**
+     * Drop the queued writes, e.g. on rollback
+     */
+    void clear() {
+        writes.clear();
+    }
+
+    /**
+     * Send the queued writes on the connection of the session
+     */
+    void flush(Connection conn) throws SQLException {
+        if (writes.isEmpty()) {
+            return;
+        }
+        List<Write> queued = new ArrayList<>(writes.values());
+        writes.clear();
+        Map<Class<?>, Group> groups = new LinkedHashMap<>();
+        for (Write write : queued) {
+            Group group = groups.computeIfAbsent(write.metadata.getType(), t -> new Group(write.orm, write.metadata));
+            switch (write.operation) {
+                case INSERT:
+                    group.inserts.add(write.entity);
+                    break;
+                case UPDATE:
+                    group.updates.add(write.entity);
+                    break;
+                default:
+                    group.deletes.add(write.entity);
+            }
+        }
+        List<Group> ordered = inDependencyOrder(groups.values());
+        for (Group group : ordered) {
+            group.orm.flushInserts(conn, group.inserts);
+        }
+        for (Group group : ordered) {
+            group.orm.flushUpdates(conn, group.updates);
+        }
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            ordered.get(i).orm.flushDeletes(conn, ordered.get(i).deletes);
+        }
+    }
+
+    private Object keyOf(EntityMetadata metadata, Object entity) {
+        NewRow newRow = new NewRow(entity);
+        return writes.containsKey(newRow) ? newRow : rowKey(metadata, entity);
+    }
+
+    private static Object rowKey(EntityMetadata metadata, Object entity) {
+        return Arrays.asList(metadata.getType(), metadata.getPrimaryKey().get(entity));
+    }
+
+    /**
+     * @return the groups ordered so that a table comes after the queued tables it
+     * references, in queue order otherwise; a reference cycle keeps queue order
+     */
+    private static List<Group> inDependencyOrder(Collection<Group> groups) {
+        Map<String, List<Group>> byTable = new LinkedHashMap<>();
+        for (Group group : groups) {
+            byTable.computeIfAbsent(group.metadata.getTableName().toLowerCase(), t -> new ArrayList<>()).add(group);
+        }
+        List<Group> ordered = new ArrayList<>(groups.size());
+        Set<String> visited = new HashSet<>();
+        for (String table : byTable.keySet()) {
+            visit(table, byTable, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private static void visit(String table, Map<String, List<Group>> byTable, Set<String> visited,
+                              List<Group> ordered) {
+        if (!visited.add(table)) {
+            return;
+        }
+        for (Group group : byTable.get(table)) {
+            for (ColumnMetadata column : group.metadata.getForeignKeys()) {
+                String parent = column.getForeignTable().toLowerCase();
+                if (byTable.containsKey(parent)) {
+                    visit(parent, byTable, visited, ordered);
+                }
+            }
+        }
+        ordered.addAll(byTable.get(table));
+    }
+}
@@ -1,7 +1,9 @@
 package dev.ade.project.pojo;
 
 import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.ForeignKey;
 import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.Reference;
 import dev.ade.project.annotations.TableName;
 
 import java.util.Objects;
@@ -14,6 +16,7 @@ public class Post {
     private int postId;
 
     @ColumnName(columnName = "username")
+    @ForeignKey(tableName = "users", columnName = "username")
     private String username;
 
     @ColumnName(columnName = "title")
@@ -31,6 +34,9 @@ public class Post {
     @ColumnName(columnName = "rating")
     private int rating;
 
+    @Reference(columnName = "username")
+    private User user;
+
     public Post(){}
 
     public Post(int postId, String username, String title, String country, String city, String tag, int rating){
@@ -100,6 +106,14 @@ public class Post {
         this.rating = rating;
     }
 
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
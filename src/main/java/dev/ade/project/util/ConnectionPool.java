@@ -0,0 +1,378 @@
+package dev.ade.project.util;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The ConnectionPool class is a bounded pool of physical JDBC connections exposed as a DataSource.
+ * Connections handed out are proxies, closing one returns the physical connection to the pool
+ * instead of closing it. Idle connections above the minimum size are evicted after the idle timeout.
+ * Each physical connection keeps its prepared statements in a StatementCache, so a statement
+ * prepared again with the same SQL on a later lease reuses the server side plan.
+ */
+public class ConnectionPool implements DataSource {
+
+    /**
+     * Source of new physical connections for the pool
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final PoolConfig config;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore leases;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean isShutdown;
+    private int loginTimeout;
+    private PrintWriter logWriter;
+
+    /**
+     * Create a pool opening its connections through the DriverManager
+     *
+     * @param url jdbc url
+     * @param username database user, may be null
+     * @param password database password, may be null
+     * @param config pool settings
+     */
+    public ConnectionPool(String url, String username, String password, PoolConfig config) {
+        this(() -> DriverManager.getConnection(url, username, password), config);
+    }
+
+    /**
+     * Create a pool on top of an external (non pooling) DataSource
+     *
+     * @param dataSource source of physical connections
+     * @param config pool settings
+     */
+    public ConnectionPool(DataSource dataSource, PoolConfig config) {
+        this(dataSource::getConnection, config);
+    }
+
+    public ConnectionPool(ConnectionFactory factory, PoolConfig config) {
+        if (factory == null || config == null) {
+            throw new IllegalArgumentException("Connection factory and pool config are required");
+        }
+        if (config.getMaxSize() < 1 || config.getMinSize() < 0 || config.getMinSize() > config.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: " + config);
+        }
+        this.factory = factory;
+        this.config = config;
+        this.leases = new Semaphore(config.getMaxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ade-orm-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, config.getIdleTimeoutMillis() / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool, waiting up to the acquire timeout when
+     * all connections are in use.
+     *
+     * @return a pooled connection, close it to give it back
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (isShutdown) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        try {
+            if (!leases.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + config.getAcquireTimeoutMillis() +
+                        "ms waiting for a connection, pool size " + config.getMaxSize());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.lease();
+                }
+                destroy(pooled);
+            }
+            return open().lease();
+        } catch (SQLException | RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the credentials of the pool");
+    }
+
+    /**
+     * @return number of physical connections currently open
+     */
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    /**
+     * @return number of physical connections waiting in the pool
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * @return number of connections currently borrowed
+     */
+    public int getActiveConnections() {
+        return config.getMaxSize() - leases.availablePermits();
+    }
+
+    /**
+     * @return number of prepareStatement calls served from a statement cache
+     */
+    public long getStatementCacheHits() {
+        return statementHits.get();
+    }
+
+    /**
+     * @return number of prepareStatement calls that prepared a new statement
+     */
+    public long getStatementCacheMisses() {
+        return statementMisses.get();
+    }
+
+    public PoolConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Close all idle connections and stop handing out new ones, connections
+     * still borrowed are closed when they are returned.
+     */
+    public void shutdown() {
+        isShutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        total.incrementAndGet();
+        try {
+            return new PooledConnection(factory.create());
+        } catch (SQLException | RuntimeException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - pooled.lastUsed < config.getValidationIntervalMillis()) {
+                return true;
+            }
+            return pooled.physical.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        if (pooled.statements != null) {
+            pooled.statements.closeInUse();
+        }
+        try {
+            if (!pooled.broken && !isShutdown) {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                destroy(pooled);
+            }
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            leases.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        if (pooled.statements != null) {
+            pooled.statements.clear();
+        }
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            Log4j.getLogger().warn("Failed to close pooled connection", e);
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && total.get() > config.getMinSize()) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > config.getIdleTimeoutMillis() && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        while (!isShutdown && total.get() < config.getMinSize()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                Log4j.getLogger().warn("Failed to open connection for the pool minimum size", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool, handed out through a new proxy per lease
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean broken;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = config.getStatementCacheSize() > 0 ?
+                    new StatementCache(config.getStatementCacheSize(), statementHits, statementMisses,
+                            () -> broken = true) : null;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    private class Lease implements InvocationHandler {
+        private PooledConnection pooled;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (pooled != null) {
+                        PooledConnection returning = pooled;
+                        pooled = null;
+                        release(returning);
+                    }
+                    return null;
+                case "isClosed":
+                    return pooled == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + (pooled == null ? "closed" : pooled.physical) + "]";
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                default:
+            }
+            if (pooled == null) {
+                throw new SQLException("Connection is closed");
+            }
+            if (pooled.statements != null && method.getName().equals("prepareStatement")) {
+                return pooled.statements.prepare(pooled.physical, (Connection) proxy, method, args);
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                    pooled.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    /**
+     * SQLState class 08 marks connection exceptions, such a connection is not put back into the pool
+     */
+    static boolean isFatal(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
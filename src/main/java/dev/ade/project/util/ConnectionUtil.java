@@ -1,44 +1,64 @@
 package dev.ade.project.util;
 
-import org.apache.log4j.Logger;
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /**
  * The ConnectionUtil class provides a static getConnection method
- * to connect to the postrgresql database.
+ * to connect to the postrgresql database. Connections are borrowed from
+ * a ConnectionPool, closing them gives them back to the pool.
  */
 public class ConnectionUtil {
-    private static Connection connection;
     private static final boolean IS_TEST = Boolean.parseBoolean(System.getenv("TEST"));
+    private static final String TEST_URL = "jdbc:h2:~/test";
     private static String url;
     private static final String USERNAME = System.getenv("USERNAME");
     private static final String PASSWORD = System.getenv("PASSWORD");
+    private static PoolConfig poolConfig = new PoolConfig();
+    private static volatile DataSource dataSource;
 
     /**
-     * The getConnection method returns a singleton Connection object.
+     * The getConnection method borrows a Connection from the pool.
      * A local database mirrors the actual deployed web database is used for testing.
      */
     public static Connection getConnection() {
         try {
-            if (IS_TEST) {
-                connection = DriverManager.getConnection("jdbc:h2:~/test");
-            } else if (connection == null || connection.isClosed()) {
-                Class.forName("org.postgresql.Driver");
-                connection = DriverManager.getConnection(url, USERNAME, PASSWORD);
-            }
-
+            return getDataSource().getConnection();
         } catch (SQLException | ClassNotFoundException e) {
             e.printStackTrace();
         }
-        return connection;
+        return null;
     }
 
+    /**
+     * The getDataSource method returns the DataSource connections are borrowed from,
+     * creating the default pool on first use.
+     */
+    public static DataSource getDataSource() throws ClassNotFoundException {
+        DataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (ConnectionUtil.class) {
+                ds = dataSource;
+                if (ds == null) {
+                    if (IS_TEST) {
+                        ds = new ConnectionPool(TEST_URL, null, null, poolConfig);
+                    } else {
+                        Class.forName("org.postgresql.Driver");
+                        ds = new ConnectionPool(url, USERNAME, PASSWORD, poolConfig);
+                    }
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
 
     /**
-     * The getConnection method returns a singleton Connection object.
-     * A local database mirrors the actual deployed web database is used for testing.
+     * The setConnection method sets the url of the database, the pool is
+     * recreated on the next getConnection call.
      *
      * @param url the endpoint with port and db schema
      * @return 0 for fail, 1 for success
@@ -47,8 +67,86 @@ public class ConnectionUtil {
         if (url == null) {
             return 0;
         }
-        ConnectionUtil.url = url;
+        synchronized (ConnectionUtil.class) {
+            if (!url.equals(ConnectionUtil.url)) {
+                ConnectionUtil.url = url;
+                replaceDataSource(null);
+            }
+        }
         return 1;
     }
-}
 
+    /**
+     * The setDataSource method plugs in an external DataSource, for example an
+     * application server or third party pool, used instead of the built-in pool.
+     *
+     * @param dataSource DataSource to borrow connections from
+     * @return 0 for fail, 1 for success
+     */
+    public static int setDataSource(DataSource dataSource) {
+        if (dataSource == null) {
+            return 0;
+        }
+        synchronized (ConnectionUtil.class) {
+            replaceDataSource(dataSource);
+        }
+        return 1;
+    }
+
+    /**
+     * The setPoolConfig method changes the settings of the built-in pool,
+     * the pool is recreated on the next getConnection call.
+     *
+     * @param config pool settings
+     * @return 0 for fail, 1 for success
+     */
+    public static int setPoolConfig(PoolConfig config) {
+        if (config == null) {
+            return 0;
+        }
+        synchronized (ConnectionUtil.class) {
+            poolConfig = config;
+            if (dataSource instanceof ConnectionPool) {
+                replaceDataSource(null);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Close all pooled connections
+     */
+    public static void shutdown() {
+        synchronized (ConnectionUtil.class) {
+            replaceDataSource(null);
+        }
+    }
+
+    /**
+     * Wrap a connection so that closing the wrapper leaves the connection open,
+     * used to hand out a connection owned by a transaction.
+     *
+     * @param connection connection to wrap
+     * @return a connection whose close method does nothing
+     */
+    public static Connection unclosable(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(ConnectionUtil.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static void replaceDataSource(DataSource ds) {
+        if (dataSource instanceof ConnectionPool) {
+            ((ConnectionPool) dataSource).shutdown();
+        }
+        dataSource = ds;
+    }
+}
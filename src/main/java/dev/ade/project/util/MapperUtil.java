@@ -1,21 +1,19 @@
 package dev.ade.project.util;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 
 import dev.ade.project.annotations.ColumnName;
-import dev.ade.project.annotations.PrimaryKey;
-
-import dev.ade.project.annotations.Unique;
+import dev.ade.project.orm.ColumnMetadata;
+import dev.ade.project.orm.EntityMetadata;
 import dev.ade.project.orm.FieldPair;
+import dev.ade.project.orm.PropertyAccessor;
 
 public class MapperUtil {
 
@@ -33,7 +31,9 @@ public class MapperUtil {
         }
         int i = 1;
         for (Object value : fieldValues) {
-            if (value instanceof Boolean) {
+            if (value == null) {
+                ps.setNull(i++, Types.NULL);
+            } else if (value instanceof Boolean) {
                 ps.setBoolean(i++, (Boolean) value);
             } else if (value instanceof Byte) {
                 ps.setByte(i++, (Byte) value);
@@ -53,6 +53,16 @@ public class MapperUtil {
                 ps.setDate(i++, Date.valueOf((LocalDate) value));
             } else if (value instanceof LocalDateTime) {
                 ps.setTimestamp(i++, Timestamp.valueOf((LocalDateTime) value));
+            } else if (value instanceof LocalTime) {
+                ps.setTime(i++, Time.valueOf((LocalTime) value));
+            } else if (value instanceof Timestamp) {
+                ps.setTimestamp(i++, (Timestamp) value);
+            } else if (value instanceof Date) {
+                ps.setDate(i++, (Date) value);
+            } else if (value instanceof Time) {
+                ps.setTime(i++, (Time) value);
+            } else if (value instanceof java.util.Date) {
+                ps.setTimestamp(i++, new Timestamp(((java.util.Date) value).getTime()));
             } else if (value instanceof Clob) {
                 ps.setClob(i++, (Clob) value);
             } else if (value instanceof Blob) {
@@ -63,6 +73,8 @@ public class MapperUtil {
                 ps.setString(i++, (String) value);
             } else if (value instanceof Character) {
                 ps.setString(i++, String.valueOf(value));
+            } else if (value instanceof Enum) {
+                ps.setString(i++, ((Enum<?>) value).name());
             } else {
                 return 0;
             }
@@ -75,42 +87,13 @@ public class MapperUtil {
      * determines the field that corresponds to the table's primary key
      *
      * @param object the object who's fields will be returned
-     * @return
+     * @return a FieldPair per @ColumnName field in declaration order
      */
     public static List<FieldPair> parseFields(Object object) {
-        List<FieldPair> fieldPairList = new ArrayList<>();
-        Class<?> objectClass = object.getClass();
-
-        Field[] fields = objectClass.getDeclaredFields();
-        for (Field field : fields) {
-            String fieldName = field.getName();
-            String columnName = "";
-            boolean isPrimaryKey = false;
-            Annotation a = field.getDeclaredAnnotation(PrimaryKey.class);
-            Annotation b = field.getDeclaredAnnotation(ColumnName.class);
-            PrimaryKey pk = (PrimaryKey)a;
-            ColumnName cn = (ColumnName)b;
-            if (pk!=null) {
-                isPrimaryKey = true;
-            }
-
-            if (cn!=null) {
-                columnName = cn.columnName();
-            }
-
-            String getterName = field.getType().getSimpleName().matches("boolean") ?
-                    "is" + fieldName.substring(0, 1).toUpperCase()+fieldName.substring(1) :
-                    "get" + fieldName.substring(0, 1).toUpperCase()+fieldName.substring(1);
-
-            try {
-                Method getterMethod = objectClass.getMethod(getterName);
-                Object fieldValue = getterMethod.invoke(object);
-                FieldPair newFieldPair = new FieldPair(columnName, fieldValue, isPrimaryKey);
-                fieldPairList.add(newFieldPair);
-
-            } catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
-                e.printStackTrace();
-            }
+        List<ColumnMetadata> columns = EntityMetadata.of(object.getClass()).getColumns();
+        List<FieldPair> fieldPairList = new ArrayList<>(columns.size());
+        for (ColumnMetadata column : columns) {
+            fieldPairList.add(new FieldPair(column.getName(), column.get(object), column.isPrimaryKey()));
         }
         return fieldPairList;
     }
@@ -127,18 +110,39 @@ public class MapperUtil {
         if (object == null || field == null || value == null) {
             return 0;
         }
-        Class<?> clazz = object.getClass();
-        String fieldName = field.getName();
-        Class<?> fieldType = field.getType();
-
-        String setterName = "set" + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
+        ColumnName cn = field.getDeclaredAnnotation(ColumnName.class);
+        if (cn == null) {
+            return 0;
+        }
+        return setField(object, EntityMetadata.of(object.getClass()).getColumn(cn.columnName()), value);
+    }
 
+    /**
+     * Method to set a column value of an object
+     *
+     * @param object object for setting field value
+     * @param column column to be set
+     * @param value field value to be added
+     * @return 0 for fail, 1 for success
+     */
+    public static int setField(Object object, ColumnMetadata column, String value) {
+        if (object == null || column == null || value == null) {
+            return 0;
+        }
         try {
-            Method setter = clazz.getMethod(setterName, fieldType);
-            Object fieldValue = convertStringToFieldType(value, fieldType);
-            setter.invoke(object, fieldValue);
+            PropertyAccessor accessor = column.getAccessor();
+            Class<?> type = column.getType();
+            if (type == int.class) {
+                accessor.setInt(object, Integer.parseInt(value));
+            } else if (type == long.class) {
+                accessor.setLong(object, Long.parseLong(value));
+            } else if (type == double.class) {
+                accessor.setDouble(object, Double.parseDouble(value));
+            } else {
+                accessor.set(object, convertStringToFieldType(value, type));
+            }
             return 1;
-        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException e) {
+        } catch (IllegalAccessException | InstantiationException | IllegalStateException e) {
             e.printStackTrace();
         }
         return 0;
@@ -176,14 +180,7 @@ public class MapperUtil {
     }
 
     public static boolean isUnique(Class<?> clazz, String fieldName) {
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            if (field.getDeclaredAnnotation(ColumnName.class).columnName().equals(fieldName) &&
-                    ((field.isAnnotationPresent(PrimaryKey.class)) || field.isAnnotationPresent(Unique.class))) {
-                return true;
-            }
-        }
-        return false;
+        return EntityMetadata.of(clazz).isUnique(fieldName);
     }
 
 }
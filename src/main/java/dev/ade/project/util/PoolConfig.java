@@ -0,0 +1,114 @@
+package dev.ade.project.util;
+
+/**
+ * The PoolConfig class holds the sizing and timing settings of a ConnectionPool.
+ * Defaults can be overridden with the POOL_MIN_SIZE, POOL_MAX_SIZE,
+ * POOL_ACQUIRE_TIMEOUT, POOL_IDLE_TIMEOUT (millis for timeouts) and POOL_STATEMENT_CACHE_SIZE
+ * environment variables.
+ */
+public class PoolConfig {
+    private int minSize = intEnv("POOL_MIN_SIZE", 1);
+    private int maxSize = intEnv("POOL_MAX_SIZE", 10);
+    private long acquireTimeoutMillis = intEnv("POOL_ACQUIRE_TIMEOUT", 30_000);
+    private long idleTimeoutMillis = intEnv("POOL_IDLE_TIMEOUT", 600_000);
+    private long validationIntervalMillis = 30_000;
+    private int validationTimeoutSeconds = 5;
+    private int statementCacheSize = intEnv("POOL_STATEMENT_CACHE_SIZE", 64);
+
+    public PoolConfig() {}
+
+    public PoolConfig(int minSize, int maxSize, long acquireTimeoutMillis, long idleTimeoutMillis) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Connections idle for less than this interval are handed out without
+     * a round trip to the database to validate them.
+     */
+    public long getValidationIntervalMillis() {
+        return validationIntervalMillis;
+    }
+
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * Number of prepared statements kept open per physical connection, 0 disables the cache.
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PoolConfig{" +
+                "minSize=" + minSize +
+                ", maxSize=" + maxSize +
+                ", acquireTimeoutMillis=" + acquireTimeoutMillis +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", validationIntervalMillis=" + validationIntervalMillis +
+                ", validationTimeoutSeconds=" + validationTimeoutSeconds +
+                ", statementCacheSize=" + statementCacheSize +
+                '}';
+    }
+}
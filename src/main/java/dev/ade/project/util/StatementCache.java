@@ -0,0 +1,215 @@
+package dev.ade.project.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The StatementCache class keeps the prepared statements of one physical connection
+ * for reuse, least recently used first out. Statements are keyed by their SQL text and
+ * the remaining prepareStatement arguments (generated keys, result set type...).
+ * A statement is taken out of the cache while it is in use, closing the handed out
+ * proxy clears its parameters and puts it back. A connection exception raised through
+ * a cached statement is reported to the owner of the physical connection.
+ */
+class StatementCache {
+    private static final Set<String> STATEMENT_SETTINGS = new HashSet<>(Arrays.asList(
+            "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize",
+            "setQueryTimeout", "setCursorName", "setEscapeProcessing", "setPoolable", "closeOnCompletion"));
+
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final Runnable broken;
+    private final LinkedHashMap<String, PreparedStatement> idle;
+    private final List<CachedStatement> inUse = new ArrayList<>();
+
+    /**
+     * @param broken called when a statement fails with a connection exception
+     */
+    StatementCache(int maxSize, AtomicLong hits, AtomicLong misses, Runnable broken) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.broken = broken;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Hand out a cached statement for the arguments of prepareStatement, or prepare a new one
+     *
+     * @param physical the physical connection
+     * @param logical the connection proxy the statement is prepared on
+     * @param prepare the prepareStatement method called
+     * @param args its arguments, the SQL first
+     * @return a statement proxy returning to the cache on close
+     */
+    synchronized PreparedStatement prepare(Connection physical, Connection logical, Method prepare, Object[] args)
+            throws Throwable {
+        String key = args.length == 1 ? (String) args[0] :
+                args[0] + "\u0000" + Arrays.deepToString(Arrays.copyOfRange(args, 1, args.length));
+        PreparedStatement ps = idle.remove(key);
+        if (ps != null && !ps.isClosed()) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            try {
+                ps = (PreparedStatement) prepare.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw failed(e.getCause());
+            }
+        }
+        CachedStatement handler = new CachedStatement(key, ps, logical);
+        inUse.add(handler);
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    /**
+     * Close the statements still in use through a lease being returned
+     */
+    synchronized void closeInUse() {
+        for (CachedStatement statement : new ArrayList<>(inUse)) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Close every cached statement, when its physical connection is closed
+     */
+    synchronized void clear() {
+        closeInUse();
+        for (PreparedStatement ps : idle.values()) {
+            closeQuietly(ps);
+        }
+        idle.clear();
+    }
+
+    synchronized int size() {
+        return idle.size();
+    }
+
+    private synchronized void checkIn(CachedStatement statement) {
+        inUse.remove(statement);
+        PreparedStatement ps = statement.physical;
+        if (!statement.reusable) {
+            closeQuietly(ps);
+            return;
+        }
+        try {
+            ps.clearParameters();
+            ps.clearBatch();
+            ps.clearWarnings();
+        } catch (SQLException e) {
+            closeQuietly(ps);
+            return;
+        }
+        PreparedStatement displaced = idle.put(statement.key, ps);
+        if (displaced != null && displaced != ps) {
+            closeQuietly(displaced);
+        }
+        Iterator<Map.Entry<String, PreparedStatement>> eldest = idle.entrySet().iterator();
+        while (idle.size() > maxSize) {
+            closeQuietly(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private Throwable failed(Throwable cause) {
+        if (cause instanceof SQLException && ConnectionPool.isFatal((SQLException) cause)) {
+            broken.run();
+        }
+        return cause;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            Log4j.getLogger().warn("Failed to close cached statement", e);
+        }
+    }
+
+    /**
+     * One use of a cached statement. Result sets opened through it are closed with it,
+     * a statement whose settings were changed or which failed is not reused.
+     */
+    private class CachedStatement implements InvocationHandler {
+        private final String key;
+        private final PreparedStatement physical;
+        private final Connection logical;
+        private final List<ResultSet> results = new ArrayList<>(1);
+        private boolean closed;
+        private boolean reusable = true;
+
+        private CachedStatement(String key, PreparedStatement physical, Connection logical) {
+            this.key = key;
+            this.physical = physical;
+            this.logical = logical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return logical;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + key + "]";
+                default:
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            if (STATEMENT_SETTINGS.contains(method.getName())) {
+                reusable = false;
+            }
+            try {
+                Object result = method.invoke(physical, args);
+                if (result instanceof ResultSet) {
+                    results.add((ResultSet) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    reusable = false;
+                }
+                throw failed(e.getCause());
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (ResultSet rs : results) {
+                closeQuietly(rs);
+            }
+            results.clear();
+            checkIn(this);
+        }
+    }
+}
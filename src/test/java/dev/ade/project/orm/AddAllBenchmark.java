@@ -0,0 +1,42 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Compares per-row add with batched addAll, run with
+ * mvn test-compile exec:java -Dexec.mainClass=dev.ade.project.orm.AddAllBenchmark -Dexec.classpathScope=test
+ */
+public class AddAllBenchmark {
+    private static final int ROWS = 20_000;
+
+    public static void main(String[] args) throws SQLException, FileNotFoundException, ArgumentFormatException {
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("round %d: add %dms, addAll %dms, addAll multi-row %dms%n", round,
+                    time(false, false), time(true, false), time(true, true));
+        }
+    }
+
+    private static long time(boolean batched, boolean multiRow) throws SQLException, FileNotFoundException,
+            ArgumentFormatException {
+        H2Database.setUp();
+        AdeOrm pAdeOrm = new AdeOrm(Post.class);
+        pAdeOrm.setMultiRowInserts(multiRow);
+        List<Post> posts = AddAllTest.posts(ROWS);
+        long start = System.nanoTime();
+        if (batched) {
+            pAdeOrm.addAll(posts);
+        } else {
+            for (Post post : posts) {
+                pAdeOrm.add(post);
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        H2Database.tearDown();
+        return elapsed;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AddAllTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testAddAllInBatches() throws ArgumentFormatException {
+        pAdeOrm.setBatchSize(2);
+        assertTrue(pAdeOrm.addAll(posts(5)));
+        assertEquals(9, pAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testAddAllWithMultiRowInserts() throws ArgumentFormatException {
+        pAdeOrm.setBatchSize(2);
+        pAdeOrm.setMultiRowInserts(true);
+        assertTrue(pAdeOrm.addAll(posts(5)));
+        assertEquals(9, pAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testAddAllRollsBackOnFailure() throws ArgumentFormatException {
+        List<Post> posts = posts(3);
+        posts.get(2).setRating(9);
+        assertThrows(ArgumentFormatException.class, () -> pAdeOrm.addAll(posts));
+        assertEquals(4, pAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testAddWritesBackGeneratedKey() throws ArgumentFormatException {
+        Post post = posts(1).get(0);
+        assertTrue(pAdeOrm.add(post));
+        assertEquals(5, post.getPostId());
+        assertEquals(post, pAdeOrm.get("post_id", 5));
+    }
+
+    @Test
+    public void testAddAllWritesBackGeneratedKeys() throws ArgumentFormatException {
+        pAdeOrm.setBatchSize(2);
+        pAdeOrm.setMultiRowInserts(true);
+        List<Post> posts = posts(3);
+        assertTrue(pAdeOrm.addAll(posts));
+        assertEquals(Arrays.asList(5, 6, 7), Arrays.asList(posts.get(0).getPostId(), posts.get(1).getPostId(),
+                posts.get(2).getPostId()));
+        assertEquals(posts.get(2), pAdeOrm.get("post_id", 7));
+    }
+
+    @Test
+    public void testAddAllFieldPairs() throws ArgumentFormatException {
+        List<List<FieldPair>> rows = Arrays.asList(
+                Collections.singletonList(new FieldPair("prim_key", "a")),
+                Collections.singletonList(new FieldPair("prim_key", "b")));
+        assertTrue(pAdeOrm.addAll("test_table", rows));
+    }
+
+    static List<Post> posts(int count) {
+        List<Post> posts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            posts.add(new Post(0, "alpha", "Post " + i, "United States", "Denver", null, i % 5));
+        }
+        return posts;
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,68 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.List;
+
+import static dev.ade.project.orm.Aggregate.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregateTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testCountAndExists() throws ArgumentFormatException {
+        assertEquals(4, pAdeOrm.count());
+        assertEquals(2, pAdeOrm.query().where(Criterion.eq("username", "alpha")).count());
+        assertTrue(pAdeOrm.exists(Criterion.eq("city", "Miami")));
+        assertFalse(pAdeOrm.exists(Criterion.eq("city", "Boise")));
+    }
+
+    @Test
+    public void testGroupByWithHaving() throws ArgumentFormatException {
+        List<AggregateRow> rows = pAdeOrm.query()
+                .groupBy("city")
+                .having(count(), ">", 1)
+                .aggregate(avg("rating"), count(), max("title"));
+        assertEquals(1, rows.size());
+        AggregateRow chicago = rows.get(0);
+        assertEquals("Chicago", chicago.get("city"));
+        assertEquals(3.0, chicago.getDouble(avg("rating")));
+        assertEquals(2L, chicago.get(count()));
+        assertEquals("Vanilla Ice Cream", chicago.get(max("title")));
+    }
+
+    @Test
+    public void testTypedTotalsWithoutGroups() throws ArgumentFormatException {
+        AggregateRow totals = pAdeOrm.query().where(Criterion.isNotNull("tag"))
+                .aggregate(sum("rating"), min("post_id")).get(0);
+        assertEquals(8L, totals.get(sum("rating")));
+        assertEquals(2, totals.get(min("post_id")));
+    }
+
+    @Test
+    public void testGroupsOrderedByAggregate() throws ArgumentFormatException {
+        List<AggregateRow> rows = pAdeOrm.query()
+                .groupBy("username")
+                .orderBy(sum("rating"), "desc")
+                .limit(1)
+                .aggregate(sum("rating"));
+        assertEquals("beta", rows.get(0).get("username"));
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
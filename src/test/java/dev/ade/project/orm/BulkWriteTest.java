@@ -0,0 +1,67 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkWriteTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testDeleteAllMixesEntitiesAndIds() throws ArgumentFormatException {
+        pAdeOrm.setBatchSize(2);
+        Post first = (Post) pAdeOrm.get("post_id", 1);
+        assertEquals(3, pAdeOrm.deleteAll(Arrays.asList(first, 2, 4, 99)));
+        assertEquals(1, pAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testUpdateAllBatchesChangedRecords() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.getAll();
+        ((Post) posts.get(0)).setRating(4);
+        ((Post) posts.get(1)).setRating(1);
+        ((Post) posts.get(2)).setTitle("Tenet");
+
+        assertEquals(3, pAdeOrm.updateAll(posts));
+        assertEquals(4, ((Post) pAdeOrm.get("post_id", 1)).getRating());
+        assertEquals(1, ((Post) pAdeOrm.get("post_id", 2)).getRating());
+        assertEquals("Tenet", ((Post) pAdeOrm.get("post_id", 3)).getTitle());
+    }
+
+    @Test
+    public void testWhereStatements() throws ArgumentFormatException {
+        assertEquals(2, pAdeOrm.updateWhere(Collections.singletonList(new FieldPair("tag", "expired")),
+                Collections.singletonList(new FieldPair("city", "Chicago")), "and"));
+        assertEquals(2, pAdeOrm.deleteWhere(Arrays.asList(new FieldPair("tag", "expired"),
+                new FieldPair("username", "nobody")), "or"));
+        assertEquals(2, pAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testWhereRequiresKnownColumns() {
+        assertThrows(ArgumentFormatException.class, () ->
+                pAdeOrm.deleteWhere(Collections.singletonList(new FieldPair("1 = 1 or city", "x")), "and"));
+        assertThrows(ArgumentFormatException.class, () ->
+                pAdeOrm.deleteWhere(Collections.emptyList(), "and"));
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
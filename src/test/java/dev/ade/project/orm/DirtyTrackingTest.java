@@ -0,0 +1,107 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.TableName;
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.util.ConnectionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirtyTrackingTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @TableName(tableName = "post")
+    public static class TimedPost {
+        @PrimaryKey
+        @ColumnName(columnName = "post_id")
+        private int postId;
+        @ColumnName(columnName = "posted_at")
+        private Timestamp postedAt;
+    }
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testUpdateWritesOnlyChangedColumns() throws ArgumentFormatException {
+        Post post = (Post) pAdeOrm.get("post_id", 3);
+        pAdeOrm.update("post", "title", "post_id", 3, "Interstellar");
+
+        post.setRating(5);
+        assertTrue(pAdeOrm.update(post));
+
+        Post stored = (Post) pAdeOrm.get("post_id", 3);
+        assertEquals(5, stored.getRating());
+        assertEquals("Interstellar", stored.getTitle());
+    }
+
+    @Test
+    public void testUpdateWithoutChangesSendsNothing() throws ArgumentFormatException {
+        Post post = (Post) pAdeOrm.getAll().get(2);
+        pAdeOrm.update("post", "city", "post_id", 3, "Gary");
+
+        assertTrue(pAdeOrm.update(post));
+        assertEquals("Gary", ((Post) pAdeOrm.get("post_id", 3)).getCity());
+    }
+
+    @Test
+    public void testUntrackedObjectWritesAllColumns() throws ArgumentFormatException {
+        Post post = new Post(3, "charlie", "Inception", "United States", "Gary", "movie", 4);
+        assertTrue(pAdeOrm.update(post));
+        assertEquals(post, pAdeOrm.get("post_id", 3));
+    }
+
+    @Test
+    public void testDateChangedInPlaceIsWritten() throws ArgumentFormatException, SQLException {
+        try (Connection conn = ConnectionUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("alter table post add column posted_at timestamp");
+            st.execute("update post set posted_at = timestamp '2021-03-01 10:00:00'");
+        }
+        AdeOrm tAdeOrm = new AdeOrm(TimedPost.class);
+        TimedPost post = (TimedPost) tAdeOrm.get("post_id", 1);
+        Timestamp later = Timestamp.valueOf("2021-03-02 10:00:00");
+        post.postedAt.setTime(later.getTime());
+        assertTrue(tAdeOrm.update(post));
+        assertEquals(later, ((TimedPost) tAdeOrm.get("post_id", 1)).postedAt);
+    }
+
+    @Test
+    public void testPartialEntityUpdatesSelectedColumnsOnly() throws ArgumentFormatException {
+        Post post = (Post) pAdeOrm.query().select("post_id", "title").where(Criterion.eq("post_id", 3)).first();
+        post.setTitle("Interstellar");
+        post.setCity("Gary");
+        assertTrue(pAdeOrm.update(post));
+        post.setTitle("Tenet");
+        assertTrue(pAdeOrm.update(post));
+
+        Post stored = (Post) pAdeOrm.get("post_id", 3);
+        assertEquals("Tenet", stored.getTitle());
+        assertEquals("Chicago", stored.getCity());
+        assertEquals("charlie", stored.getUsername());
+        assertEquals(3, stored.getRating());
+    }
+
+    @Test
+    public void testArraysCompareByContent() {
+        assertFalse(EntitySnapshots.changed(new byte[]{1, 2}, new byte[]{1, 2}));
+        assertTrue(EntitySnapshots.changed(new byte[]{1, 2}, new byte[]{1, 3}));
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
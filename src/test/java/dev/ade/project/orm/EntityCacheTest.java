@@ -0,0 +1,92 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.Cacheable;
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.TableName;
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.util.ConnectionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityCacheTest {
+    AdeOrm cAdeOrm = new AdeOrm(CachedUser.class);
+    EntityCache cache = EntityCache.of(CachedUser.class);
+
+    @Cacheable(maxEntries = 2)
+    @TableName(tableName = "users")
+    public static class CachedUser {
+        @PrimaryKey
+        @ColumnName(columnName = "username")
+        private String username;
+        @ColumnName(columnName = "first_name")
+        private String firstName;
+    }
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+        EntityCache.clearAll();
+    }
+
+    @Test
+    public void testHitReturnsNewInstance() throws ArgumentFormatException, SQLException {
+        long hits = cache.getHits();
+        CachedUser first = (CachedUser) cAdeOrm.get("username", "alpha");
+        renameOutsideOrm("alpha", "Outside");
+        CachedUser second = (CachedUser) cAdeOrm.get("username", "alpha");
+        assertNotSame(first, second);
+        assertEquals("Leah", second.firstName);
+        assertEquals(hits + 1, cache.getHits());
+
+        cAdeOrm.update2("first_name", "username", "alpha", "Lea");
+        assertEquals("Lea", ((CachedUser) cAdeOrm.get("username", "alpha")).firstName);
+    }
+
+    @Test
+    public void testTransactionReadsOwnWritesAndInvalidatesAtEnd() throws ArgumentFormatException, SQLException {
+        cAdeOrm.get("username", "beta");
+        try (Session session = Session.begin()) {
+            CachedUser beta = (CachedUser) cAdeOrm.get("username", "beta");
+            beta.firstName = "Rochelle";
+            cAdeOrm.update(beta);
+            assertEquals(0, cache.size());
+            assertEquals("Rochelle", ((CachedUser) cAdeOrm.getByIds(Arrays.asList("beta")).asMap().get("beta")).firstName);
+            session.rollback();
+        }
+        assertEquals("Richelle", ((CachedUser) cAdeOrm.get("username", "beta")).firstName);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws ArgumentFormatException {
+        long evictions = cache.getEvictions();
+        cAdeOrm.getByIds(Arrays.asList("alpha", "beta", "charlie"));
+        assertEquals(2, cache.size());
+        assertEquals(evictions + 1, cache.getEvictions());
+        long misses = cache.getMisses();
+        cAdeOrm.get("username", "alpha");
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    private static void renameOutsideOrm(String username, String firstName) throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("update users set first_name = '" + firstName + "' where username = '" +
+                    username + "'");
+        }
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,42 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import dev.ade.project.util.MapperUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityMetadataTest {
+
+    @Test
+    public void testMetadataIsCachedPerClass() {
+        assertSame(EntityMetadata.of(Post.class), EntityMetadata.of(Post.class));
+    }
+
+    @Test
+    public void testTableAndColumns() {
+        EntityMetadata post = EntityMetadata.of(Post.class);
+        assertEquals("post", post.getTableName());
+        assertEquals("post_id", post.getPrimaryKey().getName());
+        assertEquals("post_id", post.getColumns().get(0).getName());
+        assertEquals("rating", post.getColumns().get(post.getColumns().size() - 1).getName());
+    }
+
+    @Test
+    public void testUniqueColumns() {
+        assertTrue(MapperUtil.isUnique(User.class, "username"));
+        assertFalse(MapperUtil.isUnique(User.class, "first_name"));
+        assertFalse(MapperUtil.isUnique(User.class, "no_such_column"));
+    }
+
+    @Test
+    public void testParseFieldsReadsThroughMetadata() {
+        Post post = new Post(3, "charlie", "Inception", "United States", "Chicago", "movie", 3);
+        List<FieldPair> fieldPairs = MapperUtil.parseFields(post);
+        assertEquals(new FieldPair("post_id", 3, true), fieldPairs.get(0));
+        assertEquals(new FieldPair("title", "Inception"), fieldPairs.get(2));
+    }
+}
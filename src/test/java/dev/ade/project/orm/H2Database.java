@@ -0,0 +1,32 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.util.ConnectionPool;
+import dev.ade.project.util.ConnectionUtil;
+import dev.ade.project.util.PoolConfig;
+import org.h2.tools.RunScript;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * In-memory H2 database in PostgreSQL mode loaded with setup.sql, shared by the orm tests
+ */
+public class H2Database {
+
+    public static void setUp() throws SQLException, FileNotFoundException {
+        ConnectionUtil.setDataSource(new ConnectionPool("jdbc:h2:mem:ade;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                null, null, new PoolConfig(0, 4, 5_000, 60_000)));
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            RunScript.execute(connection, new FileReader("setup.sql"));
+        }
+    }
+
+    public static void tearDown() throws SQLException, FileNotFoundException {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            RunScript.execute(connection, new FileReader("teardown.sql"));
+        }
+        ConnectionUtil.shutdown();
+    }
+}
@@ -0,0 +1,69 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdentityMapTest {
+    AdeOrm uAdeOrm = new AdeOrm(User.class);
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testOneInstancePerRowInSession() throws ArgumentFormatException {
+        try (Session session = Session.begin()) {
+            Object alpha = uAdeOrm.get("username", "alpha");
+            assertSame(alpha, uAdeOrm.get("username", "alpha"));
+            assertTrue(uAdeOrm.getAll().stream().anyMatch(user -> user == alpha));
+            assertSame(alpha, uAdeOrm.getByIds(Arrays.asList("beta", "alpha")).asMap().get("alpha"));
+            assertEquals(3, session.getIdentityMap().size());
+        }
+        assertNotSame(uAdeOrm.get("username", "alpha"), uAdeOrm.get("username", "alpha"));
+    }
+
+    @Test
+    public void testUnsavedChangesStayOnTheInstance() throws ArgumentFormatException {
+        try (Session session = Session.begin()) {
+            Post post = (Post) pAdeOrm.get("post_id", 2);
+            post.setTitle("Medianoche");
+            assertEquals("Medianoche", ((Post) pAdeOrm.get("post_id", 2)).getTitle());
+            assertSame(post, pAdeOrm.query().where(Criterion.eq("city", "Miami")).first());
+        }
+    }
+
+    @Test
+    public void testWritesEvictRows() throws ArgumentFormatException, SQLException {
+        try (Session session = Session.begin()) {
+            Post post = (Post) pAdeOrm.get("post_id", 3);
+            pAdeOrm.updateWhere(Collections.singletonList(new FieldPair("rating", 4)),
+                    Collections.singletonList(new FieldPair("city", "Chicago")), "and");
+            Post reread = (Post) pAdeOrm.get("post_id", 3);
+            assertNotSame(post, reread);
+            assertEquals(4, reread.getRating());
+
+            pAdeOrm.delete(reread);
+            assertNull(pAdeOrm.getByIds(Collections.singletonList(3)).asMap().get(3));
+            session.rollback();
+            assertEquals(0, session.getIdentityMap().size());
+        }
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
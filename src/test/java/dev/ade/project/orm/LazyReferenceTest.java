@@ -0,0 +1,108 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.Cacheable;
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.ForeignKey;
+import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.Reference;
+import dev.ade.project.annotations.TableName;
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyReferenceTest {
+    AdeOrm lAdeOrm = new AdeOrm(LazyPost.class);
+
+    @TableName(tableName = "post")
+    public static class LazyPost {
+        @PrimaryKey
+        @ColumnName(columnName = "post_id")
+        private int postId;
+        @ColumnName(columnName = "username")
+        @ForeignKey(tableName = "users", columnName = "username")
+        private String username;
+        @Reference(columnName = "username")
+        private Lazy<User> user;
+    }
+
+    @Cacheable
+    @TableName(tableName = "post")
+    public static class CachedLazyPost {
+        @PrimaryKey
+        @ColumnName(columnName = "post_id")
+        private int postId;
+        @ColumnName(columnName = "username")
+        @ForeignKey(tableName = "users", columnName = "username")
+        private String username;
+        @Reference(columnName = "username")
+        private Lazy<User> user;
+    }
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testLoadsPendingHoldersTogether() throws ArgumentFormatException {
+        List<Object> posts = lAdeOrm.query().orderBy("post_id", "asc").list();
+        assertEquals(4, posts.size());
+        for (Object post : posts) {
+            assertFalse(((LazyPost) post).user.isLoaded());
+        }
+        LazyPost first = (LazyPost) posts.get(0);
+        assertEquals("alpha", first.user.getKey());
+        assertEquals("Leah", first.user.get().getFirstName());
+        for (Object post : posts) {
+            assertTrue(((LazyPost) post).user.isLoaded());
+        }
+        assertSame(first.user.get(), ((LazyPost) posts.get(3)).user.get());
+        assertEquals("Richelle", ((LazyPost) posts.get(1)).user.get().getFirstName());
+    }
+
+    @Test
+    public void testCachedMultiGetSharesBatch() throws ArgumentFormatException {
+        AdeOrm cAdeOrm = new AdeOrm(CachedLazyPost.class);
+        EntityCache.clearAll();
+        cAdeOrm.getByIds(Arrays.asList(1, 2, 3));
+        long hits = EntityCache.of(CachedLazyPost.class).getHits();
+        List<Object> posts = Arrays.asList(cAdeOrm.getByIds(Arrays.asList(1, 2, 3)).asMap().values().toArray());
+        assertEquals(hits + 3, EntityCache.of(CachedLazyPost.class).getHits());
+        assertEquals("Leah", ((CachedLazyPost) posts.get(0)).user.get().getFirstName());
+        for (Object post : posts) {
+            assertTrue(((CachedLazyPost) post).user.isLoaded());
+        }
+        assertEquals("Jorge", ((CachedLazyPost) posts.get(2)).user.get().getFirstName());
+    }
+
+    @Test
+    public void testFetchPlanFillsHolder() throws ArgumentFormatException {
+        LazyPost post = (LazyPost) lAdeOrm.query().where(Criterion.eq("post_id", 3))
+                .fetch("user", FetchMode.JOIN).first();
+        assertTrue(post.user.isLoaded());
+        assertEquals("Jorge", post.user.get().getFirstName());
+    }
+
+    @Test
+    public void testLoadedHolder() {
+        User user = new User();
+        Lazy<User> lazy = Lazy.of(user);
+        assertTrue(lazy.isLoaded());
+        assertSame(user, lazy.get());
+        assertNull(Lazy.of(null).get());
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
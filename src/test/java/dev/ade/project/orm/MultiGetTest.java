@@ -0,0 +1,48 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiGetTest {
+    AdeOrm uAdeOrm = new AdeOrm(User.class);
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testResultsInRequestOrder() throws ArgumentFormatException {
+        pAdeOrm.setBatchSize(2);
+        MultiGetResult result = pAdeOrm.getByIds(Arrays.asList(4, 1, 3));
+        List<Integer> ids = result.getFound().stream().map(p -> ((Post) p).getPostId()).collect(Collectors.toList());
+        assertEquals(Arrays.asList(4, 1, 3), ids);
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void testMissingKeysAreReported() throws ArgumentFormatException {
+        MultiGetResult result = uAdeOrm.getByIds(Arrays.asList("beta", "zulu", "alpha"));
+        assertEquals(Arrays.asList("beta", "alpha"), Arrays.asList(result.asMap().keySet().toArray()));
+        assertEquals(Collections.singletonList("zulu"), result.getMissingIds());
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
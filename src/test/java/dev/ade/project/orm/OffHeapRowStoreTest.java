@@ -0,0 +1,124 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.Cacheable;
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.TableName;
+import dev.ade.project.exception.ArgumentFormatException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapRowStoreTest {
+    AdeOrm oAdeOrm = new AdeOrm(OffHeapPost.class);
+    EntityCache cache = EntityCache.of(OffHeapPost.class);
+
+    enum Kind { FOOD, MOVIE }
+
+    @Cacheable(offHeapBytes = 1 << 16)
+    @TableName(tableName = "post")
+    public static class OffHeapPost {
+        @PrimaryKey
+        @ColumnName(columnName = "post_id")
+        private int postId;
+        @ColumnName(columnName = "title")
+        private String title;
+        @ColumnName(columnName = "city")
+        private String city;
+        @ColumnName(columnName = "tag")
+        private String tag;
+        @ColumnName(columnName = "rating")
+        private int rating;
+    }
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+        EntityCache.clearAll();
+    }
+
+    @Test
+    public void testEntityCacheKeepsRowsOffHeap() throws ArgumentFormatException {
+        OffHeapPost first = (OffHeapPost) oAdeOrm.get("post_id", 1);
+        long hits = cache.getHits();
+        OffHeapPost second = (OffHeapPost) oAdeOrm.get("post_id", 1);
+        assertEquals(hits + 1, cache.getHits());
+        assertNotSame(first, second);
+        assertEquals("Shrimp Linguini Alfredo", second.title);
+        assertEquals("New Orleans", second.city);
+        assertNull(second.tag);
+        assertEquals(1, cache.size());
+        assertEquals(1 << 16, cache.getOffHeapBytes());
+
+        assertEquals(Arrays.asList(0, "New Orleans"), cache.getColumns(1, "rating", "city"));
+        assertNull(cache.getColumns(2, "title"));
+        oAdeOrm.update2("rating", "post_id", 1, 4);
+        assertNull(cache.getColumns(1, "rating"));
+        assertEquals(4, ((OffHeapPost) oAdeOrm.get("post_id", 1)).rating);
+    }
+
+    @Test
+    public void testRoundTripOfSupportedTypes() {
+        Class<?>[] types = {String.class, Integer.class, Long.class, Double.class, Boolean.class, BigDecimal.class,
+                Timestamp.class, LocalDate.class, LocalDateTime.class, byte[].class, Kind.class, String.class};
+        OffHeapRowStore store = new OffHeapRowStore(types, 4096, 4096);
+        Timestamp timestamp = new Timestamp(1_600_000_000_000L);
+        timestamp.setNanos(123_456_789);
+        Object[] row = {"Caf\u00e9", 7, 8L, 2.5, true, new BigDecimal("12.30"), timestamp, LocalDate.of(2021, 3, 4),
+                LocalDateTime.of(2021, 3, 4, 5, 6, 7, 8), new byte[]{1, 2}, Kind.MOVIE, null};
+        assertTrue(store.put("k", row, 0));
+
+        Object[] read = store.get("k");
+        assertArrayEquals(Arrays.copyOf(row, 9), Arrays.copyOf(read, 9));
+        assertArrayEquals(new byte[]{1, 2}, (byte[]) read[9]);
+        assertEquals(Kind.MOVIE, read[10]);
+        assertNull(read[11]);
+        assertArrayEquals(new Object[]{Kind.MOVIE, "Caf\u00e9"}, store.getColumns("k", 10, 0));
+        assertFalse(store.put("other", new Object[]{new Object()}, 0));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testOldestSlabEvictedWhenFull() {
+        OffHeapRowStore store = new OffHeapRowStore(new Class<?>[]{String.class}, 128, 64);
+        for (int key = 0; key < 8; key++) {
+            assertTrue(store.put(key, new Object[]{"row " + key}, 0));
+        }
+        // rows take 22 bytes, two fit in a slab and two slabs fit in the capacity
+        assertNull(store.get(0));
+        assertNull(store.get(3));
+        assertArrayEquals(new Object[]{"row 7"}, store.get(7));
+        assertEquals(4, store.size());
+        assertEquals(4, store.getEvictions());
+        assertEquals(128, store.getAllocatedBytes());
+        assertFalse(store.put("large", new Object[]{new String(new char[64])}, 0));
+
+        store.remove(7);
+        assertNull(store.get(7));
+        assertEquals(66, store.getLiveBytes());
+    }
+
+    @Test
+    public void testExpiredRowDropped() {
+        OffHeapRowStore store = new OffHeapRowStore(new Class<?>[]{Integer.class}, 256, 256);
+        store.put(1, new Object[]{1}, System.nanoTime() - 1);
+        assertNull(store.get(1));
+        assertEquals(0, store.size());
+        assertEquals(1, store.getEvictions());
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
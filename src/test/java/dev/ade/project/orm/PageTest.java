@@ -0,0 +1,102 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.annotations.PrimaryKey;
+import dev.ade.project.annotations.TableName;
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.util.ConnectionUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @TableName(tableName = "post")
+    public static class TimedPost {
+        @PrimaryKey
+        @ColumnName(columnName = "post_id")
+        private int postId;
+        @ColumnName(columnName = "posted_at")
+        private Timestamp postedAt;
+    }
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testPagesFollowOrderWithTies() throws ArgumentFormatException {
+        List<Integer> ids = new ArrayList<>();
+        Page page = pAdeOrm.page("rating", "desc", null, 2);
+        for (Object post : page.getItems()) {
+            ids.add(((Post) post).getPostId());
+        }
+        assertTrue(page.hasNext());
+        page = pAdeOrm.page("rating", "desc", page.getNextCursor(), 2);
+        for (Object post : page.getItems()) {
+            ids.add(((Post) post).getPostId());
+        }
+        // ratings 5, 3, 3, 0 with the tie on rating 3 broken by post_id
+        assertEquals(Arrays.asList(2, 4, 3, 1), ids);
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void testPagesByPrimaryKey() throws ArgumentFormatException {
+        Page page = pAdeOrm.page("post_id", "asc", null, 3);
+        assertEquals(3, page.getItems().size());
+        page = pAdeOrm.page("post_id", "asc", page.getNextCursor(), 3);
+        assertEquals(1, page.getItems().size());
+        assertEquals(4, ((Post) page.getItems().get(0)).getPostId());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testPagesByTimestamp() throws Exception {
+        try (Connection conn = ConnectionUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("alter table post add column posted_at timestamp");
+            // a tie on posts 1 and 4 and fractional seconds
+            st.execute("update post set posted_at = case post_id when 2 then timestamp '2021-03-01 09:00:00' " +
+                    "when 3 then timestamp '2021-03-01 10:00:00.5' else timestamp '2021-03-01 10:00:00.25' end");
+        }
+        AdeOrm tAdeOrm = new AdeOrm(TimedPost.class);
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page page = tAdeOrm.page("posted_at", "asc", cursor, 1);
+            for (Object post : page.getItems()) {
+                ids.add(((TimedPost) post).postId);
+            }
+            cursor = page.getNextCursor();
+            if (cursor != null) {
+                // bound again as a timestamp, not as text
+                assertTrue(CursorToken.decode(cursor, Timestamp.class, int.class)[0] instanceof Timestamp);
+            }
+        } while (cursor != null);
+        assertEquals(Arrays.asList(2, 1, 4, 3), ids);
+    }
+
+    @Test
+    public void testRejectsMalformedCursor() {
+        assertThrows(ArgumentFormatException.class, () -> pAdeOrm.page("rating", "asc", "not-a-cursor", 2));
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
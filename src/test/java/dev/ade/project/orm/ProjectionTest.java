@@ -0,0 +1,100 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.annotations.ColumnName;
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProjectionTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    public static class PostAuthor {
+        @ColumnName(columnName = "title")
+        private String title;
+        @ColumnName(columnName = "first_name")
+        private String firstName;
+        @ColumnName(columnName = "rating")
+        private int rating;
+    }
+
+    public interface RatedPost {
+        @ColumnName(columnName = "post_id")
+        int getPostId();
+
+        @ColumnName(columnName = "tag")
+        String getTag();
+
+        default String getLabel() {
+            return getPostId() + ":" + (getTag() == null ? "untagged" : getTag());
+        }
+    }
+
+    public interface UnmappedPost {
+        @ColumnName(columnName = "post_id")
+        int getPostId();
+
+        String getTitle();
+    }
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testJoinIntoDtoClass() throws ArgumentFormatException {
+        List<PostAuthor> rows = pAdeOrm.getJointWhere(Projection.to(PostAuthor.class), "inner", "post.username",
+                "users", "users.username", Arrays.asList("title", "first_name", "rating"), "post.post_id", 2);
+        assertEquals(1, rows.size());
+        assertEquals("Cuban Sandwich", rows.get(0).title);
+        assertEquals("Richelle", rows.get(0).firstName);
+        assertEquals(5, rows.get(0).rating);
+    }
+
+    @Test
+    public void testRecordsIntoInterface() throws ArgumentFormatException {
+        List<RatedPost> rows = pAdeOrm.getRecordsInOrder(Projection.to(RatedPost.class),
+                Arrays.asList("post_id", "tag"), "username", "alpha", "post_id", "desc");
+        assertEquals(2, rows.size());
+        assertEquals(4, rows.get(0).getPostId());
+        assertNull(rows.get(0).getTag());
+        assertEquals(1, rows.get(1).getPostId());
+        assertEquals("4:untagged", rows.get(0).getLabel());
+    }
+
+    @Test
+    public void testInterfaceWithUnmappedMethodRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Projection.to(UnmappedPost.class));
+    }
+
+    @Test
+    public void testRowSetKeepsTypedColumns() throws ArgumentFormatException {
+        RowSet rows = pAdeOrm.getWithCriterion(Projection.rows(), Arrays.asList("post_id", "tag", "rating"),
+                Collections.singletonList(new FieldPair("city", "Chicago")), "and");
+        assertEquals(2, rows.size());
+        assertEquals(3, rows.getInt(0, rows.columnIndex("post_id")));
+        assertEquals("movie", rows.getString(0, 1));
+        assertTrue(rows.isNull(1, 1));
+        assertEquals(Arrays.asList(4, null, 3), rows.getRow(1));
+    }
+
+    @Test
+    public void testTextResultsUnchanged() throws ArgumentFormatException {
+        assertEquals(Arrays.asList("Inception", "3"), pAdeOrm.getColumns("post_id", 3, "title", "rating"));
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,46 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PropertyAccessorTest {
+
+    @Test
+    public void testIntPropertyWithoutBoxing() {
+        PropertyAccessor rating = EntityMetadata.of(Post.class).getColumn("rating").getAccessor();
+        assertEquals("IntAccessor", rating.getClass().getSimpleName());
+        Post post = new Post();
+        rating.setInt(post, 4);
+        assertEquals(4, post.getRating());
+        assertEquals(4, rating.getInt(post));
+        assertEquals(4, rating.get(post));
+    }
+
+    @Test
+    public void testObjectAndCharProperties() {
+        EntityMetadata metadata = EntityMetadata.of(User.class);
+        assertEquals("ObjectAccessor", metadata.getColumn("gender").getAccessor().getClass().getSimpleName());
+        User user = new User();
+        metadata.getColumn("username").set(user, "alpha");
+        metadata.getColumn("gender").set(user, 'F');
+        assertEquals("alpha", user.getUsername());
+        assertEquals('F', user.getGender());
+        assertEquals('F', metadata.getColumn("gender").get(user));
+    }
+
+    @Test
+    public void testFieldFallbackWithoutAccessors() throws NoSuchFieldException {
+        PropertyAccessor accessor = PropertyAccessor.of(NoAccessors.class.getDeclaredField("count"), null, null);
+        NoAccessors entity = new NoAccessors();
+        accessor.setInt(entity, 7);
+        assertEquals(7, entity.count);
+        assertEquals(7, accessor.get(entity));
+    }
+
+    private static class NoAccessors {
+        private int count;
+    }
+}
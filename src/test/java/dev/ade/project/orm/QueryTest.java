@@ -0,0 +1,86 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static dev.ade.project.orm.Criterion.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    private static List<Integer> ids(List<Object> posts) {
+        return posts.stream().map(p -> ((Post) p).getPostId()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testNestedGroupsOrderAndLimit() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.query()
+                .where(eq("city", "Chicago").or(anyOf(like("title", "Cuban%"), isNull("tag"))))
+                .and(ge("rating", 3))
+                .orderBy("post_id", "desc")
+                .limit(2)
+                .list();
+        assertEquals(Arrays.asList(4, 3), ids(posts));
+    }
+
+    @Test
+    public void testInAndNot() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.query()
+                .where(in("username", "alpha", "beta", "charlie").and(not(eq("username", "alpha"))))
+                .orderBy("post_id", "asc")
+                .list();
+        assertEquals(Arrays.asList(2, 3), ids(posts));
+    }
+
+    @Test
+    public void testProjectionOnlyReadsSelectedColumns() throws ArgumentFormatException {
+        Post post = (Post) pAdeOrm.query().select("post_id", "title").where(eq("post_id", 2)).first();
+        assertEquals("Cuban Sandwich", post.getTitle());
+        assertNull(post.getCity());
+    }
+
+    @Test
+    public void testSameShapeCompilesOnce() throws ArgumentFormatException {
+        String first = pAdeOrm.query().where(gt("rating", 1).and(in("city", "Miami", "Chicago", "Austin"))).toSql();
+        long misses = SqlCache.getMisses();
+        String second = pAdeOrm.query().where(gt("rating", 4).and(in("city", "Chicago", "Miami", "Boise"))).toSql();
+        assertSame(first, second);
+        assertEquals(misses, SqlCache.getMisses());
+        assertEquals("select * from post where (rating > ? and city in (?, ?, ?, ?))", first);
+    }
+
+    @Test
+    public void testShapeKeyHoldsNoValues() {
+        Object shape = not(gt("rating", 1).and(in("city", "Miami", "Chicago", "Austin"))).shape();
+        assertEquals(shape, not(gt("rating", 4).and(in("city", "Boise", "Tulsa", "Provo"))).shape());
+        assertFalse(shape.toString().contains("Miami"));
+        assertNotEquals(shape, not(gt("rating", 1).and(in("city", "Miami", "Chicago", "Austin", "Boise", "Tulsa")))
+                .shape());
+    }
+
+    @Test
+    public void testUnknownColumnIsRejected() {
+        assertThrows(ArgumentFormatException.class, () ->
+                pAdeOrm.query().where(eq("rating; drop table post", 1)).list());
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,61 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReferenceFetchTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testJoinFetch() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.query().where(Criterion.eq("city", "Chicago"))
+                .orderBy("post_id", "asc").fetch("user", FetchMode.JOIN).list();
+        assertEquals(2, posts.size());
+        Post inception = (Post) posts.get(0);
+        assertEquals("charlie", inception.getUser().getUsername());
+        assertEquals("Jorge", inception.getUser().getFirstName());
+        assertEquals("alpha", ((Post) posts.get(1)).getUser().getUsername());
+    }
+
+    @Test
+    public void testBatchFetchSharesTargets() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.query().orderBy("post_id", "asc").fetch("user", FetchMode.BATCH).list();
+        assertEquals(4, posts.size());
+        assertEquals("Richelle", ((Post) posts.get(1)).getUser().getFirstName());
+        assertSame(((Post) posts.get(0)).getUser(), ((Post) posts.get(3)).getUser());
+    }
+
+    @Test
+    public void testFetchReferencesOfLoadedList() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.getAll();
+        pAdeOrm.fetchReferences(posts, "user");
+        for (Object post : posts) {
+            assertEquals(((Post) post).getUsername(), ((Post) post).getUser().getUsername());
+        }
+    }
+
+    @Test
+    public void testUnknownReference() {
+        assertThrows(ArgumentFormatException.class, () -> pAdeOrm.query().fetch("author", FetchMode.JOIN));
+        assertThrows(ArgumentFormatException.class, () -> pAdeOrm.fetchReferences(pAdeOrm.getAll(), "title"));
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
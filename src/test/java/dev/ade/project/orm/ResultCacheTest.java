@@ -0,0 +1,91 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import dev.ade.project.util.ConnectionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+    AdeOrm uAdeOrm = new AdeOrm(User.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+        ResultCache.clear();
+        pAdeOrm.setResultCaching(true);
+    }
+
+    @Test
+    public void testRepeatedQueryServedUntilWrite() throws ArgumentFormatException, SQLException {
+        List<String> columns = Arrays.asList("title", "rating");
+        List<List<Object>> first = pAdeOrm.getRecordsInOrder(columns, "city", "Chicago", "rating", "desc");
+        long hits = ResultCache.getHits();
+        executeOutsideOrm("update post set rating = 1 where post_id = 3");
+        assertEquals(first, pAdeOrm.getRecordsInOrder(columns, "city", "Chicago", "rating", "desc"));
+        assertEquals(hits + 1, ResultCache.getHits());
+
+        pAdeOrm.update2("rating", "post_id", 4, 2);
+        assertEquals(Arrays.asList(Arrays.asList("Vanilla Ice Cream", "2"), Arrays.asList("Inception", "1")),
+                pAdeOrm.getRecordsInOrder(columns, "city", "Chicago", "rating", "desc"));
+    }
+
+    @Test
+    public void testHitDecodesNewEntities() throws ArgumentFormatException {
+        Post first = (Post) pAdeOrm.getAllInOrder("post_id", "asc").get(0);
+        List<Object> posts = pAdeOrm.getAllInOrder("post_id", "asc");
+        assertNotSame(first, posts.get(0));
+        assertEquals(first, posts.get(0));
+        assertNull(((Post) posts.get(0)).getTag());
+        assertEquals(5, ((Post) posts.get(1)).getRating());
+    }
+
+    @Test
+    public void testJoinTaggedWithJoinedTable() throws ArgumentFormatException {
+        pAdeOrm.getJoint("inner", "post.username", "users", "users.username", Arrays.asList("title", "first_name"));
+        assertEquals(1, ResultCache.size());
+        uAdeOrm.update2("first_name", "username", "beta", "Rochelle");
+        assertEquals(0, ResultCache.size());
+    }
+
+    @Test
+    public void testBoundedByEstimatedSize() throws ArgumentFormatException {
+        long maxBytes = ResultCache.getMaxBytes();
+        try {
+            pAdeOrm.getAll();
+            long oneResult = ResultCache.getBytes();
+            ResultCache.setMaxBytes(oneResult + oneResult / 2);
+            long evictions = ResultCache.getEvictions();
+            pAdeOrm.getAllInOrder("post_id", "asc");
+            assertEquals(1, ResultCache.size());
+            assertEquals(evictions + 1, ResultCache.getEvictions());
+            assertTrue(ResultCache.getBytes() <= ResultCache.getMaxBytes());
+        } finally {
+            ResultCache.setMaxBytes(maxBytes);
+        }
+    }
+
+    private static void executeOutsideOrm(String sql) throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
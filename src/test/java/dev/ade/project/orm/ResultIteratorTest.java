@@ -0,0 +1,60 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.util.ConnectionPool;
+import dev.ade.project.util.ConnectionUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultIteratorTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testStreamMapsAllRows() throws ArgumentFormatException {
+        pAdeOrm.setFetchSize(2);
+        try (Stream<Object> posts = pAdeOrm.stream("rating", "desc")) {
+            List<Integer> ratings = posts.map(p -> ((Post) p).getRating()).collect(Collectors.toList());
+            assertEquals(4, ratings.size());
+            assertEquals(5, ratings.get(0));
+        }
+        assertEquals(0, activeConnections());
+    }
+
+    @Test
+    public void testClosingIteratorEarlyReleasesConnection() throws ArgumentFormatException {
+        try (ResultIterator posts = pAdeOrm.iterate()) {
+            assertTrue(posts.hasNext());
+            assertNotNull(posts.next());
+            assertEquals(1, activeConnections());
+        }
+        assertEquals(0, activeConnections());
+    }
+
+    private static int activeConnections() {
+        try {
+            return ((ConnectionPool) ConnectionUtil.getDataSource()).getActiveConnections();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,63 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RowDecoderTest {
+    AdeOrm uAdeOrm = new AdeOrm(User.class);
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testGetDecodesTypedColumns() throws ArgumentFormatException {
+        Post post = (Post) pAdeOrm.get("post_id", 2);
+        assertEquals(new Post(2, "beta", "Cuban Sandwich", "United States", "Miami", "food", 5), post);
+    }
+
+    @Test
+    public void testGetAllLeavesNullColumnsAtDefault() throws ArgumentFormatException {
+        List<Object> posts = pAdeOrm.getAllInOrder("post_id", "asc");
+        assertEquals(4, posts.size());
+        assertNull(((Post) posts.get(0)).getTag());
+        assertEquals('F', ((User) uAdeOrm.get("username", "alpha")).getGender());
+    }
+
+    @Test
+    public void testColumnListsResolveQualifiedNames() throws ArgumentFormatException {
+        List<List<Object>> rows = uAdeOrm.getJointWhere("inner", "users.username", "post", "post.username",
+                Arrays.asList("users.first_name", "title"), "post.tag", "food");
+        assertEquals(Arrays.asList("Richelle", "Cuban Sandwich"), rows.get(0));
+    }
+
+    @Test
+    public void testQualifiedNamesTellJoinedColumnsApart() throws ArgumentFormatException {
+        AdeOrm cachingAdeOrm = new AdeOrm(Post.class);
+        cachingAdeOrm.setResultCaching(true);
+        for (AdeOrm orm : Arrays.asList(pAdeOrm, cachingAdeOrm, cachingAdeOrm)) {
+            // no user matches a tag, so the two username columns differ
+            List<List<Object>> rows = orm.getJointWhere("left", "post.tag", "users", "users.username",
+                    Arrays.asList("post.username", "users.username"), "post.post_id", 2);
+            assertEquals(Arrays.asList("beta", null), rows.get(0));
+        }
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
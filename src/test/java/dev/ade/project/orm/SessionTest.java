@@ -0,0 +1,119 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testRollbackDiscardsWork() throws ArgumentFormatException {
+        pAdeOrm.begin();
+        try {
+            pAdeOrm.update2("title", "post_id", 1, "Rolled back");
+            assertEquals("Rolled back", ((Post) pAdeOrm.get("post_id", 1)).getTitle());
+            pAdeOrm.rollback();
+        } finally {
+            pAdeOrm.close();
+        }
+        assertNull(Session.current());
+        assertEquals("Shrimp Linguini Alfredo", ((Post) pAdeOrm.get("post_id", 1)).getTitle());
+    }
+
+    @Test
+    public void testCommitRefusedAfterFailedStatement() throws ArgumentFormatException {
+        try (Session session = Session.begin()) {
+            pAdeOrm.update2("title", "post_id", 1, "Committed?");
+            pAdeOrm.update2("title", "post_id", 99, "Missing");
+            assertTrue(session.isRollbackOnly());
+            assertThrows(SQLException.class, session::commit);
+        }
+        assertEquals("Shrimp Linguini Alfredo", ((Post) pAdeOrm.get("post_id", 1)).getTitle());
+    }
+
+    @Test
+    public void testNestedScopeLeavesOuterTransactionOpen() throws Exception {
+        try (Session outer = Session.begin()) {
+            pAdeOrm.update2("title", "post_id", 1, "Outer");
+            try (Session inner = Session.begin()) {
+                assertSame(outer, inner);
+                pAdeOrm.update2("title", "post_id", 2, "Inner");
+                inner.commit();
+            }
+            assertSame(outer, Session.current());
+            assertTrue(outer.isActive());
+            pAdeOrm.begin();
+            pAdeOrm.close();
+            assertSame(outer, Session.current());
+            outer.rollback();
+        }
+        assertNull(Session.current());
+        assertEquals("Shrimp Linguini Alfredo", ((Post) pAdeOrm.get("post_id", 1)).getTitle());
+        assertEquals("Cuban Sandwich", ((Post) pAdeOrm.get("post_id", 2)).getTitle());
+    }
+
+    @Test
+    public void testNestedRollbackMarksOuterRollbackOnly() throws Exception {
+        try (Session outer = Session.begin()) {
+            pAdeOrm.update2("title", "post_id", 1, "Outer");
+            try (Session inner = Session.begin()) {
+                inner.rollback();
+            }
+            assertTrue(outer.isRollbackOnly());
+            assertThrows(SQLException.class, outer::commit);
+        }
+        assertEquals("Shrimp Linguini Alfredo", ((Post) pAdeOrm.get("post_id", 1)).getTitle());
+    }
+
+    @Test
+    public void testSharedInstanceKeepsThreadsApart() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int postId = 1; postId <= 2; postId++) {
+                int id = postId;
+                Callable<String> work = () -> {
+                    try (Session session = Session.begin()) {
+                        pAdeOrm.update2("title", "post_id", id, "Thread " + id);
+                        String title = ((Post) pAdeOrm.get("post_id", id)).getTitle();
+                        if (id == 1) {
+                            session.commit();
+                        }
+                        return title;
+                    }
+                };
+                results.add(executor.submit(work));
+            }
+            assertEquals("Thread 1", results.get(0).get());
+            assertEquals("Thread 2", results.get(1).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("Thread 1", ((Post) pAdeOrm.get("post_id", 1)).getTitle());
+        assertEquals("Cuban Sandwich", ((Post) pAdeOrm.get("post_id", 2)).getTitle());
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
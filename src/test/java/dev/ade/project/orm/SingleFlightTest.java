@@ -0,0 +1,117 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testWaitingCallersShareOneLookup() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger lookups = new AtomicInteger();
+        SingleFlight.Lookup<List<Object>> lookup = () -> {
+            lookups.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(Arrays.asList("Inception", "3"));
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            long collapsed = SingleFlight.getCollapsed();
+            List<Future<List<Object>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> SingleFlight.run("key", lookup, ArrayList::new)));
+            while (lookups.get() == 0) {
+                Thread.sleep(1);
+            }
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> SingleFlight.run("key", lookup, ArrayList::new)));
+            }
+            while (SingleFlight.getCollapsed() < collapsed + 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            List<Object> first = results.get(0).get();
+            for (Future<List<Object>> result : results) {
+                assertEquals(Arrays.asList("Inception", "3"), result.get());
+            }
+            assertNotSame(first, results.get(1).get());
+            assertEquals(1, lookups.get());
+            assertEquals(0, SingleFlight.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureReachesEveryCaller() {
+        assertThrows(ArgumentFormatException.class, () -> SingleFlight.run("failing", () -> {
+            throw new ArgumentFormatException("no such column");
+        }, value -> value));
+        assertEquals(0, SingleFlight.getInFlight());
+    }
+
+    @Test
+    public void testConcurrentGetsReturnOwnInstances() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            long calls = SingleFlight.getCalls();
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> pAdeOrm.get("post_id", 2)));
+            }
+            Object first = results.get(0).get();
+            for (int i = 1; i < results.size(); i++) {
+                assertEquals(first, results.get(i).get());
+                assertNotSame(first, results.get(i).get());
+            }
+            assertEquals(calls + 16, SingleFlight.getCalls());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNullColumnNamesNotCoalesced() throws ArgumentFormatException {
+        assertNull(pAdeOrm.getColumns("post_id", 1, (String[]) null));
+    }
+
+    @Test
+    public void testNotUsedInTransaction() throws ArgumentFormatException {
+        long calls = SingleFlight.getCalls();
+        try (Session session = Session.begin()) {
+            pAdeOrm.get("post_id", 1);
+            pAdeOrm.getColumns("post_id", 1, "title");
+        }
+        assertEquals(calls, SingleFlight.getCalls());
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,45 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.util.ConnectionPool;
+import dev.ade.project.util.ConnectionUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementCacheTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeAll
+    public static void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testRepeatedGetReusesSqlAndStatement() throws ArgumentFormatException, ClassNotFoundException,
+            SQLException {
+        ConnectionPool pool = ConnectionUtil.getDataSource().unwrap(ConnectionPool.class);
+        pAdeOrm.get("post_id", 1);
+        long sqlHits = SqlCache.getHits();
+        long statementHits = pool.getStatementCacheHits();
+        long statementMisses = pool.getStatementCacheMisses();
+
+        for (int i = 2; i <= 4; i++) {
+            assertEquals(i, ((Post) pAdeOrm.get("post_id", i)).getPostId());
+        }
+        assertEquals(sqlHits + 3, SqlCache.getHits());
+        assertEquals(statementHits + 3, pool.getStatementCacheHits());
+        assertEquals(statementMisses, pool.getStatementCacheMisses());
+    }
+
+    @AfterAll
+    public static void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,134 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitOfWorkTest {
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+    AdeOrm uAdeOrm = new AdeOrm(User.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testFlushOrdersInsertsByForeignKey() throws Exception {
+        Post post = new Post(0, "delta", "Gumbo", "United States", "New Orleans", "food", 4);
+        try (Session session = Session.begin()) {
+            session.setWriteBehind(true);
+            // the post is queued before the user it references
+            assertTrue(pAdeOrm.add(post));
+            assertTrue(uAdeOrm.add(new User("Dana", "Reyes", 'F', "delta", "password123")));
+            assertTrue(session.getUnitOfWork().hasPending());
+            assertEquals(0, post.getPostId());
+            session.commit();
+            assertFalse(session.getUnitOfWork().hasPending());
+        }
+        assertEquals(5, post.getPostId());
+        assertEquals("delta", ((Post) pAdeOrm.get("post_id", 5)).getUsername());
+        assertEquals("Dana", ((User) uAdeOrm.get("username", "delta")).getFirstName());
+    }
+
+    @Test
+    public void testRepeatedUpdatesCollapse() throws Exception {
+        try (Session session = Session.begin()) {
+            session.setWriteBehind(true);
+            Post post = (Post) pAdeOrm.get("post_id", 3);
+            post.setTitle("Interstellar");
+            assertTrue(pAdeOrm.update(post));
+            post.setRating(5);
+            assertTrue(pAdeOrm.update(post));
+            assertTrue(pAdeOrm.update(post));
+            Post other = (Post) pAdeOrm.get("post_id", 4);
+            other.setCity("Boston");
+            pAdeOrm.update(other);
+            assertTrue(session.getUnitOfWork().hasPending());
+
+            // a statement of the session sends the queue first and reads its own writes
+            assertEquals("Interstellar", pAdeOrm.getColumns("post_id", 3, "title").get(0));
+            assertFalse(session.getUnitOfWork().hasPending());
+            session.commit();
+        }
+        Post post = (Post) pAdeOrm.get("post_id", 3);
+        assertEquals("Interstellar", post.getTitle());
+        assertEquals(5, post.getRating());
+        assertEquals("Boston", ((Post) pAdeOrm.get("post_id", 4)).getCity());
+    }
+
+    @Test
+    public void testDeleteCancelsQueuedWrites() throws Exception {
+        try (Session session = Session.begin()) {
+            session.setWriteBehind(true);
+            Post added = new Post(10, "beta", "Key Lime Pie", "United States", "Miami", "food", 4);
+            pAdeOrm.add(added);
+            pAdeOrm.delete(added);
+            assertFalse(session.getUnitOfWork().hasPending());
+
+            Post post = (Post) pAdeOrm.get("post_id", 2);
+            post.setTitle("Medianoche");
+            pAdeOrm.update(post);
+            pAdeOrm.delete(post);
+            assertFalse(pAdeOrm.update(post));
+            assertFalse(exists(2));
+            session.commit();
+        }
+        assertFalse(exists(2));
+        assertFalse(exists(10));
+    }
+
+    @Test
+    public void testRollbackDropsQueue() throws Exception {
+        try (Session session = Session.begin()) {
+            session.setWriteBehind(true);
+            pAdeOrm.add(new Post(11, "alpha", "Beignets", "United States", "New Orleans", "food", 5));
+            session.rollback();
+            assertFalse(session.getUnitOfWork().hasPending());
+            session.commit();
+        }
+        assertFalse(exists(11));
+    }
+
+    @Test
+    public void testFailedFlushMarksRollbackOnly() throws Exception {
+        try (Session session = Session.begin()) {
+            session.setWriteBehind(true);
+            pAdeOrm.add(new Post(12, "nobody", "Orphan", "United States", "Miami", null, 1));
+            pAdeOrm.add(new Post(13, "alpha", "Pralines", "United States", "New Orleans", "food", 4));
+            assertThrows(SQLException.class, session::commit);
+            assertTrue(session.isRollbackOnly());
+        }
+        assertFalse(exists(13));
+    }
+
+    @Test
+    public void testWriteBehindOffRunsAtOnce() throws ArgumentFormatException, SQLException {
+        try (Session session = Session.begin()) {
+            session.setWriteBehind(true);
+            pAdeOrm.add(new Post(14, "charlie", "Tenet", "United States", "Chicago", "movie", 2));
+            session.setWriteBehind(false);
+            assertNull(session.getUnitOfWork());
+            assertTrue(pAdeOrm.delete(pAdeOrm.get("post_id", 14)));
+            session.commit();
+        }
+        assertFalse(exists(14));
+    }
+
+    private boolean exists(int postId) throws ArgumentFormatException {
+        return ((Post) pAdeOrm.get("post_id", postId)).getPostId() == postId;
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
@@ -0,0 +1,70 @@
+package dev.ade.project.orm;
+
+import dev.ade.project.exception.ArgumentFormatException;
+import dev.ade.project.pojo.Post;
+import dev.ade.project.pojo.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpsertTest {
+    AdeOrm uAdeOrm = new AdeOrm(User.class);
+    AdeOrm pAdeOrm = new AdeOrm(Post.class);
+
+    @BeforeEach
+    public void runSetup() throws SQLException, FileNotFoundException {
+        H2Database.setUp();
+    }
+
+    @Test
+    public void testUpsertUpdatesExistingRecord() throws ArgumentFormatException {
+        User user = new User("Leah", "Smith", 'F', "alpha", "password456");
+        assertTrue(uAdeOrm.upsert(user));
+        assertEquals(user, uAdeOrm.get("username", "alpha"));
+        assertEquals(3, uAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testUpsertInsertsNewRecord() throws ArgumentFormatException {
+        User user = new User("Tyler", "Kelly", 'M', "delta", "password123");
+        assertTrue(uAdeOrm.save(user));
+        assertEquals(user, uAdeOrm.get("username", "delta"));
+    }
+
+    @Test
+    public void testUpsertAllMixesNewAndExisting() throws ArgumentFormatException {
+        Post existing = new Post(3, "charlie", "Inception", "United States", "Gary", "movie", 4);
+        Post created = new Post(0, "beta", "Tiramisu", "Italy", "Rome", "food", 5);
+        assertTrue(pAdeOrm.upsertAll(Arrays.asList(existing, created)));
+        assertEquals(5, created.getPostId());
+        assertEquals(existing, pAdeOrm.get("post_id", 3));
+        assertEquals(5, pAdeOrm.getAll().size());
+    }
+
+    @Test
+    public void testUpsertUnsupportedOnOtherDatabases() {
+        assertThrows(SQLFeatureNotSupportedException.class, () ->
+                Dialect.OTHER.upsertSql("users", Arrays.asList("username", "first_name"), "username"));
+    }
+
+    @Test
+    public void testUpdateWithObjectNotInDB() throws ArgumentFormatException {
+        Post post = new Post(13, "charlie", "Inception", "United States", "Gary", "good movie", 4);
+        assertFalse(pAdeOrm.update(post));
+        post.setPostId(3);
+        assertTrue(pAdeOrm.update(post));
+        assertEquals(post, pAdeOrm.get("post_id", 3));
+    }
+
+    @AfterEach
+    public void runTeardown() throws SQLException, FileNotFoundException {
+        H2Database.tearDown();
+    }
+}
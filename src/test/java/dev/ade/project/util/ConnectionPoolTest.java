@@ -0,0 +1,146 @@
+package dev.ade.project.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void createPool() {
+        pool = new ConnectionPool("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1", null, null,
+                new PoolConfig(0, 2, 200, 60_000));
+    }
+
+    @AfterEach
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseReturnsConnectionToPool() throws SQLException {
+        Connection first = pool.getConnection();
+        first.close();
+        assertTrue(first.isClosed());
+        assertEquals(1, pool.getIdleConnections());
+
+        try (Connection second = pool.getConnection()) {
+            assertFalse(second.isClosed());
+            assertEquals(1, pool.getTotalConnections());
+        }
+    }
+
+    @Test
+    public void testAcquireTimesOutWhenExhausted() throws SQLException {
+        try (Connection a = pool.getConnection(); Connection b = pool.getConnection()) {
+            assertEquals(2, pool.getActiveConnections());
+            assertThrows(SQLException.class, pool::getConnection);
+        }
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void testReturnedConnectionIsReset() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+        }
+        try (Connection conn = pool.getConnection()) {
+            assertTrue(conn.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void testStatementsAreReusedAcrossLeases() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("select ?")) {
+                ps.setInt(1, i);
+                try (ResultSet rs = ps.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(i, rs.getInt(1));
+                }
+            }
+        }
+        assertEquals(1, pool.getStatementCacheMisses());
+        assertEquals(2, pool.getStatementCacheHits());
+    }
+
+    @Test
+    public void testStatementInUseIsNotShared() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement first = conn.prepareStatement("select ?");
+             PreparedStatement second = conn.prepareStatement("select ?")) {
+            first.setInt(1, 1);
+            second.setInt(1, 2);
+            try (ResultSet a = first.executeQuery(); ResultSet b = second.executeQuery()) {
+                assertTrue(a.next() && b.next());
+                assertEquals(1, a.getInt(1));
+                assertEquals(2, b.getInt(1));
+            }
+        }
+        assertEquals(2, pool.getStatementCacheMisses());
+    }
+
+    @Test
+    public void testClosingConnectionClosesItsStatements() throws SQLException {
+        PreparedStatement ps;
+        try (Connection conn = pool.getConnection()) {
+            ps = conn.prepareStatement("select 1");
+        }
+        assertTrue(ps.isClosed());
+    }
+
+    @Test
+    public void testConnectionFailingInCachedStatementIsNotReused() throws SQLException {
+        pool.shutdown();
+        pool = new ConnectionPool(ConnectionPoolTest::failingConnection, new PoolConfig(0, 2, 200, 60_000));
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement("select 1")) {
+            SQLException e = assertThrows(SQLException.class, ps::executeQuery);
+            assertEquals("08006", e.getSQLState());
+        }
+        assertEquals(0, pool.getIdleConnections());
+        assertEquals(0, pool.getTotalConnections());
+    }
+
+    /**
+     * A connection whose prepared statements fail on execute as if the link was lost
+     */
+    private static Connection failingConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+        return (Connection) Proxy.newProxyInstance(ConnectionPoolTest.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(physical, args);
+                        if (!(result instanceof PreparedStatement)) {
+                            return result;
+                        }
+                        PreparedStatement ps = (PreparedStatement) result;
+                        return Proxy.newProxyInstance(ConnectionPoolTest.class.getClassLoader(),
+                                new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                                    if (m.getName().startsWith("execute")) {
+                                        throw new SQLException("Connection reset", "08006");
+                                    }
+                                    try {
+                                        return m.invoke(ps, a);
+                                    } catch (InvocationTargetException e) {
+                                        throw e.getCause();
+                                    }
+                                });
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}